@@ -2,19 +2,124 @@ package sample.config;
 
 import javax.sql.DataSource;
 
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.util.Assert;
+
+import sample.data.DatabaseSeeder;
+import sample.data.InstantMessageWriter;
+import sample.data.InstrumentedDataSource;
 
 @Configuration
 public class DataSourceConfig {
 
+    @Autowired
+    Environment env;
+
+    @Autowired
+    ResourceLoader resourceLoader;
+
+    @Bean
+    public InstrumentedDataSource dataSource() {
+        String name = env.getProperty("sample.datasource.name", "testdb");
+        String mode = env.getProperty("sample.datasource.mode", "memory");
+        if("file".equals(mode)) {
+            return new InstrumentedDataSource(pooledDataSource(name, fileUrl(name)));
+        }
+        Assert.isTrue("memory".equals(mode), "sample.datasource.mode must be memory or file, but was " + mode);
+        if(!env.getProperty("sample.datasource.pool.enabled", Boolean.class, false)) {
+            EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
+            return new InstrumentedDataSource(builder
+                    .setType(EmbeddedDatabaseType.H2)
+                    .setName(name)
+                    .build());
+        }
+        String url = env.getProperty("sample.datasource.url", "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+        return new InstrumentedDataSource(pooledDataSource(name, url));
+    }
+
+    /**
+     * The URL of a file backed H2 database using the MVStore, configured from
+     * the "sample.datasource.file.*" properties. The database is closed, and
+     * compacted for up to max-compact-time milliseconds, when the pool is
+     * closed.
+     */
+    private String fileUrl(String name) {
+        String prefix = "sample.datasource.file.";
+        return "jdbc:h2:file:" + env.getProperty(prefix + "path", "./data/" + name)
+                + ";MV_STORE=TRUE"
+                + ";CACHE_SIZE=" + env.getProperty(prefix + "cache-size", Integer.class, 65536)
+                + ";WRITE_DELAY=" + env.getProperty(prefix + "write-delay", Integer.class, 500)
+                + ";MAX_COMPACT_TIME=" + env.getProperty(prefix + "max-compact-time", Integer.class, 200)
+                + ";DB_CLOSE_ON_EXIT=FALSE";
+    }
+
+    /**
+     * A Tomcat JDBC pool configured from the "sample.datasource.pool.*"
+     * properties.
+     */
+    private DataSource pooledDataSource(String name, String url) {
+        String prefix = "sample.datasource.pool.";
+        int maxActive = env.getProperty(prefix + "max-active", Integer.class, 20);
+        int minIdle = env.getProperty(prefix + "min-idle", Integer.class, 2);
+        int statementCacheSize = env.getProperty(prefix + "statement-cache-size", Integer.class, 50);
+        int leakDetectionSeconds = env.getProperty(prefix + "leak-detection-timeout", Integer.class, 60);
+
+        PoolProperties pool = new PoolProperties();
+        pool.setName(name);
+        pool.setUrl(url);
+        pool.setDriverClassName(env.getProperty("sample.datasource.driver-class-name", "org.h2.Driver"));
+        pool.setUsername(env.getProperty("sample.datasource.username", "sa"));
+        pool.setPassword(env.getProperty("sample.datasource.password", ""));
+        pool.setMaxActive(maxActive);
+        pool.setMaxIdle(maxActive);
+        pool.setInitialSize(minIdle);
+        pool.setMinIdle(minIdle);
+        pool.setMaxWait(env.getProperty(prefix + "max-wait", Integer.class, 5000));
+        pool.setTestOnBorrow(true);
+        pool.setValidationQuery("select 1");
+        pool.setValidationInterval(30000);
+        if(leakDetectionSeconds > 0) {
+            pool.setSuspectTimeout(leakDetectionSeconds);
+            pool.setLogAbandoned(true);
+        }
+        if(statementCacheSize > 0) {
+            pool.setJdbcInterceptors("StatementCache(prepared=true,callable=false,max=" + statementCacheSize + ")");
+        }
+        return new org.apache.tomcat.jdbc.pool.DataSource(pool);
+    }
+
+    /**
+     * Seeds the database once Hibernate has created the schema, unless it
+     * already contains users.
+     */
+    @Bean
+    @DependsOn("entityManagerFactory")
+    public DatabaseSeeder databaseSeeder() {
+        String[] locations = env.getProperty("sample.datasource.data", String[].class,
+                new String[] { "classpath:seed/data.sql", "classpath:seed/password-encode.sql" });
+        Resource[] scripts = new Resource[locations.length];
+        for(int i = 0; i < locations.length; i++) {
+            scripts[i] = resourceLoader.getResource(locations[i].trim());
+        }
+        return new DatabaseSeeder(dataSource(), "select count(*) from user", scripts);
+    }
 
     @Bean
-    public DataSource dataSource() {
-        EmbeddedDatabaseBuilder builder = new EmbeddedDatabaseBuilder();
-        return builder.setType(EmbeddedDatabaseType.H2).build();
+    public InstantMessageWriter instantMessageWriter() {
+        int capacity = env.getProperty("sample.im.write-behind.capacity", Integer.class, 10000);
+        int batchSize = env.getProperty("sample.im.write-behind.batch-size", Integer.class, 100);
+        long offerTimeoutMillis = env.getProperty("sample.im.write-behind.offer-timeout", Long.class, 50L);
+        return new InstantMessageWriter(new JdbcTemplate(dataSource()), capacity, batchSize, offerTimeoutMillis);
     }
 	
 }
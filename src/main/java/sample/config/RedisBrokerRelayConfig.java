@@ -0,0 +1,50 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import sample.websocket.PresenceRegistry;
+import sample.websocket.RedisBrokerRelay;
+
+/**
+ * Relays broker messages between the nodes of the application over Redis when
+ * the property "sample.websocket.broker" is "redis". See
+ * {@link RedisBrokerRelay}.
+ */
+@Configuration
+@ConditionalOnExpression("'${sample.websocket.broker:simple}' == 'redis'")
+public class RedisBrokerRelayConfig {
+
+    @Bean
+    public RedisBrokerRelay redisBrokerRelay(RedisConnectionFactory connectionFactory, PresenceRegistry presenceRegistry) {
+        return new RedisBrokerRelay(new StringRedisTemplate(connectionFactory), presenceRegistry);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisBrokerRelayContainer(RedisConnectionFactory connectionFactory, RedisBrokerRelay redisBrokerRelay) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(redisBrokerRelay, new ChannelTopic(RedisBrokerRelay.CHANNEL));
+        return container;
+    }
+}
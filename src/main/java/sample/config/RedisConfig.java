@@ -16,16 +16,25 @@
 package sample.config;
 
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.session.ExpiringSession;
+import org.springframework.session.SessionRepository;
 import org.springframework.session.data.redis.RedisOperationsSessionRepository;
+import redis.clients.jedis.JedisPoolConfig;
 import redis.embedded.RedisServer;
+import sample.security.SecurityContextCodec;
+import sample.session.InstrumentedJedisConnectionFactory;
+import sample.session.PipelinedSessionRepository;
+import sample.session.SessionAttributeSerializer;
 
 import java.io.IOException;
 import java.net.ServerSocket;
@@ -36,6 +45,9 @@ import java.net.ServerSocket;
 @Configuration
 public class RedisConfig {
 
+	@Autowired
+	Environment env;
+
 	@Bean
 	public RedisServerBean redisServer() {
 		return new RedisServerBean();
@@ -47,6 +59,9 @@ public class RedisConfig {
 
 		@Override
 		public void afterPropertiesSet() throws Exception {
+			if(!env.getProperty("sample.redis.embedded", Boolean.class, true)) {
+				return;
+			}
 			redisServer = new RedisServer(getPort());
 			redisServer.start();
 		}
@@ -59,10 +74,27 @@ public class RedisConfig {
 		}
 	}
 
+	/**
+	 * A pooled {@link JedisConnectionFactory} configured from the
+	 * "sample.redis.pool.*" properties.
+	 */
 	@Bean
 	public JedisConnectionFactory connectionFactory() throws Exception {
-		JedisConnectionFactory factory = new JedisConnectionFactory();
+		String prefix = "sample.redis.pool.";
+		JedisPoolConfig poolConfig = new JedisPoolConfig();
+		poolConfig.setMaxTotal(env.getProperty(prefix + "max-total", Integer.class, 64));
+		poolConfig.setMaxIdle(env.getProperty(prefix + "max-idle", Integer.class, 16));
+		poolConfig.setMinIdle(env.getProperty(prefix + "min-idle", Integer.class, 2));
+		poolConfig.setBlockWhenExhausted(true);
+		poolConfig.setMaxWaitMillis(env.getProperty(prefix + "max-wait", Long.class, 2000L));
+		poolConfig.setTestOnBorrow(env.getProperty(prefix + "test-on-borrow", Boolean.class, false));
+		poolConfig.setTestWhileIdle(env.getProperty(prefix + "test-while-idle", Boolean.class, true));
+		poolConfig.setTimeBetweenEvictionRunsMillis(env.getProperty(prefix + "eviction-interval", Long.class, 30000L));
+		poolConfig.setJmxNamePrefix("redis");
+
+		JedisConnectionFactory factory = new InstrumentedJedisConnectionFactory(poolConfig);
 		factory.setPort(getPort());
+		factory.setTimeout(env.getProperty("sample.redis.timeout", Integer.class, 2000));
 		return factory;
 	}
 
@@ -71,20 +103,46 @@ public class RedisConfig {
 		RedisTemplate<String, ExpiringSession> template = new RedisTemplate<String, ExpiringSession>();
 		template.setKeySerializer(new StringRedisSerializer());
 		template.setHashKeySerializer(new StringRedisSerializer());
+		template.setValueSerializer(sessionAttributeSerializer());
+		template.setHashValueSerializer(sessionAttributeSerializer());
 		template.setConnectionFactory(connectionFactory);
 		return template;
 	}
 
+	/**
+	 * Writes session attributes in a compact binary form unless
+	 * "sample.session.codec" is "jdk".
+	 */
 	@Bean
-	public RedisOperationsSessionRepository sessionRepository(RedisTemplate<String, ExpiringSession> redisTemplate) {
-		return new RedisOperationsSessionRepository(redisTemplate);
+	public SessionAttributeSerializer sessionAttributeSerializer() {
+		boolean writeCompact = !"jdk".equals(env.getProperty("sample.session.codec", "compact"));
+		return new SessionAttributeSerializer(writeCompact, new SecurityContextCodec());
 	}
 
+	@Bean
+	public RedisOperationsSessionRepository redisSessionRepository(RedisTemplate<String, ExpiringSession> redisTemplate) {
+		return new RedisOperationsSessionRepository(redisTemplate);
+	}
 
+	/**
+	 * Sends the writes of {@link #redisSessionRepository(RedisTemplate)} in a
+	 * single pipeline unless "sample.session.pipelined-writes" is false.
+	 */
+	@Bean
+	@Primary
+	public SessionRepository<?> sessionRepository(RedisOperationsSessionRepository redisSessionRepository, RedisTemplate<String, ExpiringSession> redisTemplate) {
+		if(env.getProperty("sample.session.pipelined-writes", Boolean.class, true)) {
+			return new PipelinedSessionRepository(redisSessionRepository, redisTemplate);
+		}
+		return redisSessionRepository;
+	}
 
 	private Integer availablePort;
 
 	private int getPort() throws IOException {
+		if(availablePort == null) {
+			availablePort = env.getProperty("sample.redis.port", Integer.class);
+		}
 		if(availablePort == null) {
 			ServerSocket socket = new ServerSocket(0);
 			availablePort = socket.getLocalPort();
@@ -18,15 +18,22 @@ package sample.config;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.servlet.configuration.EnableWebMvcSecurity;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.data.repository.query.SecurityEvaluationContextExtension;
 
+import sample.data.UserRepository;
+import sample.security.AdaptiveBCryptPasswordEncoder;
+import sample.security.BoundedUserCache;
+import sample.security.LoginThrottledFailureHandler;
+import sample.security.PasswordHashingExecutor;
+import sample.security.RehashingAuthenticationProvider;
+
 
 @Configuration
 @EnableWebMvcSecurity
@@ -34,6 +41,9 @@ import org.springframework.security.data.repository.query.SecurityEvaluationCont
 public class WebSecurityConfig
     extends WebSecurityConfigurerAdapter {
 
+    @Autowired
+    Environment env;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
 
@@ -44,6 +54,7 @@ public class WebSecurityConfig
                 .and()
             .formLogin()
                 .loginPage("/login")
+                .failureHandler(new LoginThrottledFailureHandler("/login?error"))
                 .permitAll()
                 .and()
             .logout()
@@ -51,10 +62,42 @@ public class WebSecurityConfig
     }
 
     @Autowired
-    public void configureGlobal(AuthenticationManagerBuilder auth, UserDetailsService userDetailsService) throws Exception {
+    public void configureGlobal(AuthenticationManagerBuilder auth, UserDetailsService userDetailsService, UserRepository userRepository) throws Exception {
+        RehashingAuthenticationProvider authenticationProvider =
+                new RehashingAuthenticationProvider(userRepository, passwordEncoder(), passwordHashingExecutor());
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setUserCache(userCache());
+        authenticationProvider.setPasswordEncoder(passwordHashingExecutor().decorate(passwordEncoder()));
         auth
-            .userDetailsService(userDetailsService)
-                .passwordEncoder(new BCryptPasswordEncoder());
+            .authenticationProvider(authenticationProvider);
+    }
+
+    @Bean
+    public AdaptiveBCryptPasswordEncoder passwordEncoder() {
+        Integer strength = env.getProperty("sample.security.bcrypt.strength", Integer.class);
+        if(strength != null) {
+            return new AdaptiveBCryptPasswordEncoder(strength);
+        }
+        long targetMillis = env.getProperty("sample.security.bcrypt.target-millis", Long.class, 250L);
+        int minStrength = env.getProperty("sample.security.bcrypt.min-strength", Integer.class, 10);
+        int maxStrength = env.getProperty("sample.security.bcrypt.max-strength", Integer.class, 16);
+        return AdaptiveBCryptPasswordEncoder.calibrate(targetMillis, minStrength, maxStrength);
+    }
+
+    @Bean
+    public PasswordHashingExecutor passwordHashingExecutor() {
+        int threads = env.getProperty("sample.security.login-hashing.threads", Integer.class, Runtime.getRuntime().availableProcessors());
+        int queueCapacity = env.getProperty("sample.security.login-hashing.queue-capacity", Integer.class, 100);
+        int retryAfterSeconds = env.getProperty("sample.security.login-hashing.retry-after", Integer.class, 5);
+        long timeoutMillis = env.getProperty("sample.security.login-hashing.timeout", Long.class, 10000L);
+        return new PasswordHashingExecutor(threads, queueCapacity, retryAfterSeconds, timeoutMillis);
+    }
+
+    @Bean
+    public BoundedUserCache userCache() {
+        int maxSize = env.getProperty("sample.security.user-cache.max-size", Integer.class, 1000);
+        int timeToLiveSeconds = env.getProperty("sample.security.user-cache.time-to-live", Integer.class, 300);
+        return new BoundedUserCache(maxSize, timeToLiveSeconds);
     }
 
     @Bean
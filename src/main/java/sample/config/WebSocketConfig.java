@@ -2,8 +2,6 @@ package sample.config;
 
 
 import java.security.Principal;
-import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Map;
 
 import javax.servlet.http.HttpSession;
@@ -25,7 +23,6 @@ import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.support.ChannelInterceptorAdapter;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.session.Session;
 import org.springframework.session.SessionRepository;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.AbstractWebSocketMessageBrokerConfigurer;
@@ -35,8 +32,14 @@ import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
-import sample.data.ActiveWebSocketUser;
 import sample.data.ActiveWebSocketUserRepository;
+import sample.session.SessionTouchCoalescer;
+import sample.websocket.ActiveWebSocketUserAudit;
+import sample.websocket.ChannelExecutorPostProcessor;
+import sample.websocket.ChannelMetrics;
+import sample.websocket.PresenceEventAggregator;
+import sample.websocket.PresenceRegistry;
+import sample.websocket.RedisBrokerRelay;
 
 @Configuration
 @EnableScheduling
@@ -49,6 +52,9 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
     @Autowired
     SessionRepository sessionRepository;
 
+    @Autowired(required = false)
+    RedisBrokerRelay redisBrokerRelay;
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/messages")
@@ -59,28 +65,52 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.setInterceptors(sessionContextChannelInterceptorAdapter());
+        configureTaskExecutor(registration, "inbound");
+        registration.setInterceptors(sessionContextChannelInterceptorAdapter(), clientInboundChannelMetrics());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        configureTaskExecutor(registration, "outbound");
+        registration.setInterceptors(clientOutboundChannelMetrics());
+    }
+
+    /**
+     * Sizes the channel's executor from the "sample.websocket.inbound-channel.*"
+     * or "sample.websocket.outbound-channel.*" properties. The rejection policy
+     * is applied by {@link ChannelExecutorPostProcessor}.
+     */
+    private void configureTaskExecutor(ChannelRegistration registration, String channel) {
+        String prefix = "sample.websocket." + channel + "-channel.";
+        int processors = Runtime.getRuntime().availableProcessors();
+        int corePoolSize = env.getProperty(prefix + "core-pool-size", Integer.class, processors * 2);
+        int maxPoolSize = env.getProperty(prefix + "max-pool-size", Integer.class, Math.max(corePoolSize, processors * 4));
+        registration.taskExecutor()
+            .corePoolSize(corePoolSize)
+            .maxPoolSize(maxPoolSize)
+            .queueCapacity(env.getProperty(prefix + "queue-capacity", Integer.class, 10000))
+            .keepAliveSeconds(env.getProperty(prefix + "keep-alive-seconds", Integer.class, 60));
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.enableSimpleBroker("/queue/", "/topic/");
         registry.setApplicationDestinationPrefixes("/app");
+        if (redisBrokerRelay != null) {
+            registry.configureBrokerChannel().setInterceptors(redisBrokerRelay);
+        }
     }
 
     @Bean
     public ChannelInterceptorAdapter sessionContextChannelInterceptorAdapter() {
+        final SessionTouchCoalescer touchCoalescer = sessionTouchCoalescer();
         return new ChannelInterceptorAdapter() {
             @Override
             public Message<?> preSend(Message<?> message, MessageChannel channel) {
                 Map<String, Object> sessionHeaders = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
                 String sessionId = (String) sessionHeaders.get(SESSION_ATTR);
                 if (sessionId != null) {
-                    Session session = sessionRepository.getSession(sessionId);
-                    if (session != null) {
-
-                        sessionRepository.save(session);
-                    }
+                    touchCoalescer.touch(sessionId);
                 }
                 return super.preSend(message, channel);
             }
@@ -88,13 +118,46 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
     }
 
     @Bean
-    public WebSocketConnectHandler webSocketConnectHandler(SimpMessageSendingOperations messagingTemplate, ActiveWebSocketUserRepository repository) {
-    	return new WebSocketConnectHandler(messagingTemplate, repository);
+    public ChannelMetrics clientInboundChannelMetrics() {
+        return new ChannelMetrics(ChannelExecutorPostProcessor.INBOUND_EXECUTOR);
+    }
+
+    @Bean
+    public ChannelMetrics clientOutboundChannelMetrics() {
+        return new ChannelMetrics(ChannelExecutorPostProcessor.OUTBOUND_EXECUTOR);
+    }
+
+    @Bean
+    public static ChannelExecutorPostProcessor channelExecutorPostProcessor() {
+        return new ChannelExecutorPostProcessor();
+    }
+
+    @Bean
+    public SessionTouchCoalescer sessionTouchCoalescer() {
+        double windowFraction = env.getProperty("sample.session.touch-window-fraction", Double.class, 0.1);
+        return new SessionTouchCoalescer(sessionRepository, windowFraction);
+    }
+
+    @Bean
+    public WebSocketConnectHandler webSocketConnectHandler(PresenceEventAggregator presenceEvents, PresenceRegistry presenceRegistry, ActiveWebSocketUserAudit audit) {
+    	return new WebSocketConnectHandler(presenceEvents, presenceRegistry, audit);
     }
     
     @Bean
-    public WebSocketDisconnectHandler webSocketDisconnectHandler(SimpMessageSendingOperations messagingTemplate, ActiveWebSocketUserRepository repository) {
-    	return new WebSocketDisconnectHandler(messagingTemplate, repository);
+    public WebSocketDisconnectHandler webSocketDisconnectHandler(PresenceEventAggregator presenceEvents, PresenceRegistry presenceRegistry, ActiveWebSocketUserAudit audit) {
+    	return new WebSocketDisconnectHandler(presenceEvents, presenceRegistry, audit);
+    }
+
+    @Bean
+    public PresenceEventAggregator presenceEventAggregator(SimpMessageSendingOperations messagingTemplate) {
+        return new PresenceEventAggregator(messagingTemplate);
+    }
+
+    @Bean
+    public ActiveWebSocketUserAudit activeWebSocketUserAudit(ActiveWebSocketUserRepository repository) {
+        boolean enabled = env.getProperty("sample.websocket.presence-audit.enabled", Boolean.class, false);
+        int queueCapacity = env.getProperty("sample.websocket.presence-audit.queue-capacity", Integer.class, 10000);
+        return new ActiveWebSocketUserAudit(enabled ? repository : null, queueCapacity);
     }
 
     private static final String SESSION_ATTR = "httpSession.id";
@@ -119,13 +182,15 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
     }
     
     class WebSocketConnectHandler implements ApplicationListener<SessionConnectEvent> {
-    	private ActiveWebSocketUserRepository repository;
-    	private SimpMessageSendingOperations messagingTemplate;
+    	private PresenceRegistry presenceRegistry;
+    	private ActiveWebSocketUserAudit audit;
+    	private PresenceEventAggregator presenceEvents;
 
-		public WebSocketConnectHandler(SimpMessageSendingOperations messagingTemplate, ActiveWebSocketUserRepository repository) {
+		public WebSocketConnectHandler(PresenceEventAggregator presenceEvents, PresenceRegistry presenceRegistry, ActiveWebSocketUserAudit audit) {
 			super();
-			this.messagingTemplate = messagingTemplate;
-			this.repository = repository;
+			this.presenceEvents = presenceEvents;
+			this.presenceRegistry = presenceRegistry;
+			this.audit = audit;
 		}
 
 		@Override
@@ -136,19 +201,23 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
 				return;
 			}
 			String id = SimpMessageHeaderAccessor.getSessionId(headers);
-			repository.save(new ActiveWebSocketUser(id, user.getName(), Calendar.getInstance()));
-			messagingTemplate.convertAndSend("/topic/friends/signin", Arrays.asList(user.getName()));
+			audit.connected(id, user.getName());
+			if(presenceRegistry.connect(user.getName(), id)) {
+				presenceEvents.signin(user.getName());
+			}
 		}
     }
     
     class WebSocketDisconnectHandler implements ApplicationListener<SessionDisconnectEvent> {
-    	private ActiveWebSocketUserRepository repository;
-    	private SimpMessageSendingOperations messagingTemplate;
+    	private PresenceRegistry presenceRegistry;
+    	private ActiveWebSocketUserAudit audit;
+    	private PresenceEventAggregator presenceEvents;
 
-		public WebSocketDisconnectHandler(SimpMessageSendingOperations messagingTemplate, ActiveWebSocketUserRepository repository) {
+		public WebSocketDisconnectHandler(PresenceEventAggregator presenceEvents, PresenceRegistry presenceRegistry, ActiveWebSocketUserAudit audit) {
 			super();
-			this.messagingTemplate = messagingTemplate;
-			this.repository = repository;
+			this.presenceEvents = presenceEvents;
+			this.presenceRegistry = presenceRegistry;
+			this.audit = audit;
 		}
 		
 		@Override
@@ -157,14 +226,13 @@ public class WebSocketConfig extends AbstractWebSocketMessageBrokerConfigurer {
 			if(id == null) {
 				return;
 			}
-			ActiveWebSocketUser user = repository.findOne(id);
-			if(user == null) {
+			audit.disconnected(id);
+			String username = presenceRegistry.disconnect(id);
+			if(username == null) {
 				return;
 			}
-			
-			repository.delete(id);
 
-			messagingTemplate.convertAndSend("/topic/friends/signout", Arrays.asList(user.getUsername()));
+			presenceEvents.signout(username);
 		}
     	
     }
@@ -15,7 +15,10 @@
  */
 package sample.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageType;
@@ -25,12 +28,18 @@ import org.springframework.security.config.annotation.web.socket.AbstractSecurit
 import org.springframework.security.messaging.util.matcher.MessageMatcher;
 import org.springframework.security.messaging.util.matcher.SimpDestinationMessageMatcher;
 
+import sample.security.MessageAuthorizationCache;
+import sample.security.MessageAuthorizationCachePostProcessor;
+
 /**
  * @author Rob Winch
  */
 @Configuration
 public class WebSocketSecurityConfig extends AbstractSecurityWebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    Environment env;
+
     @Override
     protected void configure(MessageSecurityMetadataSourceRegistry messages) {
         messages
@@ -39,6 +48,17 @@ public class WebSocketSecurityConfig extends AbstractSecurityWebSocketMessageBro
 
     }
 
+    @Bean
+    public MessageAuthorizationCache messageAuthorizationCache() {
+        int maxDestinations = env.getProperty("sample.websocket.authorization-cache.max-destinations", Integer.class, 256);
+        return new MessageAuthorizationCache(maxDestinations);
+    }
+
+    @Bean
+    public static MessageAuthorizationCachePostProcessor messageAuthorizationCachePostProcessor() {
+        return new MessageAuthorizationCachePostProcessor();
+    }
+
     // avoid processing outbound channel
     public void configureClientOutboundChannel(ChannelRegistration registration) {}
     
@@ -1,8 +1,9 @@
 package sample.data;
 
 
-import java.util.Calendar;
+import java.time.Instant;
 
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 
@@ -13,11 +14,12 @@ public class ActiveWebSocketUser {
 	
 	private String username;
 	
-	private Calendar connectionTime;
+	@Convert(converter = InstantConverter.class)
+	private Instant connectionTime;
 
 	public ActiveWebSocketUser() {}
 	
-	public ActiveWebSocketUser(String id, String username, Calendar connectionTime) {
+	public ActiveWebSocketUser(String id, String username, Instant connectionTime) {
 		super();
 		this.id = id;
 		this.username = username;
@@ -32,11 +34,11 @@ public class ActiveWebSocketUser {
 		this.username = username;
 	}
 
-	public Calendar getConnectionTime() {
+	public Instant getConnectionTime() {
 		return connectionTime;
 	}
 
-	public void setConnectionTime(Calendar connectionTime) {
+	public void setConnectionTime(Instant connectionTime) {
 		this.connectionTime = connectionTime;
 	}
 	
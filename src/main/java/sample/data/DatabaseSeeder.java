@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.data;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.util.Assert;
+
+/**
+ * Runs the seed scripts against a {@link DataSource} at startup, unless the
+ * database already contains data. This allows a file backed database to be
+ * reused across restarts without being reseeded.
+ */
+public class DatabaseSeeder implements InitializingBean {
+    private static final Log logger = LogFactory.getLog(DatabaseSeeder.class);
+
+    private final DataSource dataSource;
+
+    private final String existingDataQuery;
+
+    private final Resource[] scripts;
+
+    /**
+     * Creates a new instance
+     *
+     * @param dataSource the {@link DataSource} to seed
+     * @param existingDataQuery a query returning the number of rows that, if
+     * greater than 0, indicates the database has already been seeded
+     * @param scripts the scripts to run, in order
+     */
+    public DatabaseSeeder(DataSource dataSource, String existingDataQuery, Resource... scripts) {
+        Assert.notNull(dataSource, "dataSource cannot be null");
+        Assert.hasText(existingDataQuery, "existingDataQuery cannot be empty");
+        this.dataSource = dataSource;
+        this.existingDataQuery = existingDataQuery;
+        this.scripts = scripts;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Long existing = new JdbcTemplate(dataSource).queryForObject(existingDataQuery, Long.class);
+        if(existing != null && existing > 0) {
+            logger.info("Database already contains data, skipping seed scripts");
+            return;
+        }
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+        populator.setScripts(scripts);
+        DatabasePopulatorUtils.execute(populator, dataSource);
+    }
+}
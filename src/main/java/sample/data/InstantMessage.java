@@ -1,15 +1,65 @@
 package sample.data;
 
-import java.util.Calendar;
+import java.time.Instant;
 
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.validation.constraints.Size;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * An instant message sent between two users. Instances are stored in batches by
+ * the {@link InstantMessageWriter} rather than through JPA.
+ */
+@Entity
+@Table(indexes = @Index(name = "instant_message_conversation_created_id", columnList = "conversation_key,created,id"))
 public class InstantMessage {
+	/**
+	 * The maximum number of characters in a message.
+	 */
+	public static final int MAX_MESSAGE_LENGTH = 2000;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(name = "to_email")
 	private String to;
 	
+	@Column(name = "from_email")
 	private String from;
+
+	@Column(name = "conversation_key", length = 511)
+	private String conversationKey;
 	
+	@NotEmpty(message = "Message is required.")
+	@Size(max = MAX_MESSAGE_LENGTH, message = "Message is too long.")
+	@Column(length = MAX_MESSAGE_LENGTH)
 	private String message;
 	
-	private Calendar created = Calendar.getInstance();
+	@Convert(converter = InstantConverter.class)
+	@JsonSerialize(using = InstantJson.Serializer.class)
+	@JsonDeserialize(using = InstantJson.Deserializer.class)
+	private Instant created = Instant.now();
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
 
 	public String getTo() {
 		return to;
@@ -17,6 +67,7 @@ public class InstantMessage {
 
 	public void setTo(String to) {
 		this.to = to;
+		updateConversationKey();
 	}
 
 	public String getFrom() {
@@ -25,6 +76,28 @@ public class InstantMessage {
 
 	public void setFrom(String from) {
 		this.from = from;
+		updateConversationKey();
+	}
+
+	/**
+	 * Gets the key shared by every message between the two users, regardless of
+	 * who sent it.
+	 */
+	@JsonIgnore
+	public String getConversationKey() {
+		return conversationKey;
+	}
+
+	private void updateConversationKey() {
+		this.conversationKey = to == null || from == null ? null : conversationKey(to, from);
+	}
+
+	/**
+	 * Creates the key of the conversation between two users by ordering their
+	 * usernames.
+	 */
+	public static String conversationKey(String user, String otherUser) {
+		return user.compareTo(otherUser) <= 0 ? user + " " + otherUser : otherUser + " " + user;
 	}
 
 	public String getMessage() {
@@ -35,11 +108,11 @@ public class InstantMessage {
 		this.message = message;
 	}
 
-	public Calendar getCreated() {
+	public Instant getCreated() {
 		return created;
 	}
 
-	public void setCreated(Calendar created) {
+	public void setCreated(Instant created) {
 		this.created = created;
 	}
 	
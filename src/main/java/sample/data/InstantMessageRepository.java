@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.data;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Reads the {@link InstantMessage} instances stored by the
+ * {@link InstantMessageWriter}.
+ */
+public interface InstantMessageRepository extends CrudRepository<InstantMessage, Long> {
+
+    /**
+     * Finds the newest {@link InstantMessage} instances of a conversation, newest
+     * first.
+     */
+    @Query("select im from InstantMessage im where im.conversationKey = :conversationKey "
+            + "order by im.created desc, im.id desc")
+    List<InstantMessage> findConversation(@Param("conversationKey") String conversationKey, Pageable pageable);
+
+    /**
+     * Finds the {@link InstantMessage} instances of a conversation that are older
+     * than the given position, newest first.
+     */
+    @Query("select im from InstantMessage im where im.conversationKey = :conversationKey "
+            + "and (im.created < :created or (im.created = :created and im.id < :id)) "
+            + "order by im.created desc, im.id desc")
+    List<InstantMessage> findConversationOlderThan(@Param("conversationKey") String conversationKey,
+            @Param("created") Instant created, @Param("id") Long id, Pageable pageable);
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.data;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Stores {@link InstantMessage} instances without making the sender wait on the
+ * database. Messages are queued in a bounded buffer and a dedicated writer
+ * thread inserts whatever has accumulated using a single JDBC batch.
+ *
+ * <p>
+ * When the buffer is full {@link #write(InstantMessage)} waits up to the offer
+ * timeout for room, slowing down senders, and then drops (and counts) the
+ * message. Messages still buffered are written when the context is closed,
+ * and messages written after that are dropped.
+ * </p>
+ *
+ * <p>
+ * Each batch is inserted in its own transaction. If a batch fails (i.e. one
+ * message violates a constraint) it is rolled back and its messages are
+ * inserted one at a time, so only the messages that cannot be written are
+ * lost.
+ * </p>
+ */
+@ManagedResource
+public class InstantMessageWriter implements DisposableBean {
+    private static final String INSERT_SQL = "insert into instant_message(to_email,from_email,conversation_key,message,created) values (?,?,?,?,?)";
+
+    private static final Log logger = LogFactory.getLog(InstantMessageWriter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<InstantMessage> buffer;
+
+    private final int batchSize;
+
+    private final long offerTimeoutMillis;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    private volatile long lagMillis;
+
+    /**
+     * Creates a new instance and starts the writer thread
+     *
+     * @param jdbcTemplate the {@link JdbcTemplate} to insert with
+     * @param capacity the maximum number of messages waiting to be written
+     * @param batchSize the maximum number of messages in a single batch
+     * @param offerTimeoutMillis how long to wait for room when the buffer is full
+     */
+    public InstantMessageWriter(JdbcTemplate jdbcTemplate, int capacity, int batchSize, long offerTimeoutMillis) {
+        Assert.notNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.buffer = new ArrayBlockingQueue<InstantMessage>(capacity);
+        this.batchSize = batchSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "instant-message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the {@link InstantMessage} to be written.
+     *
+     * @return true if the message was queued, false if it was dropped because
+     * the buffer stayed full
+     */
+    public boolean write(InstantMessage message) {
+        if(!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        try {
+            if(buffer.offer(message, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    private void writeLoop() {
+        List<InstantMessage> batch = new ArrayList<InstantMessage>(batchSize);
+        while(running || !buffer.isEmpty()) {
+            try {
+                InstantMessage first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch(InterruptedException e) {
+                running = false;
+            }
+            buffer.drainTo(batch, batchSize - batch.size());
+            insert(batch);
+            batch.clear();
+        }
+    }
+
+    private void insert(final List<InstantMessage> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            setMessage(ps, batch.get(i));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return batch.size();
+                        }
+                    });
+                }
+            });
+            written.addAndGet(batch.size());
+        } catch(DataAccessException e) {
+            logger.warn("Could not write a batch of " + batch.size() + " instant messages, writing them one at a time", e);
+            insertEach(batch);
+        }
+        batches.incrementAndGet();
+        long max = maxBatchSize.get();
+        while(batch.size() > max && !maxBatchSize.compareAndSet(max, batch.size())) {
+            max = maxBatchSize.get();
+        }
+        lagMillis = System.currentTimeMillis() - batch.get(0).getCreated().toEpochMilli();
+    }
+
+    private void insertEach(List<InstantMessage> batch) {
+        for(final InstantMessage message : batch) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, new PreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps) throws SQLException {
+                        setMessage(ps, message);
+                    }
+                });
+                written.incrementAndGet();
+            } catch(DataAccessException e) {
+                failed.incrementAndGet();
+                logger.error("Could not write instant message from " + message.getFrom() + " to " + message.getTo(), e);
+            }
+        }
+    }
+
+    private static void setMessage(PreparedStatement ps, InstantMessage message) throws SQLException {
+        ps.setString(1, message.getTo());
+        ps.setString(2, message.getFrom());
+        ps.setString(3, message.getConversationKey());
+        ps.setString(4, message.getMessage());
+        ps.setTimestamp(5, Timestamp.from(message.getCreated()));
+    }
+
+    /**
+     * Stops accepting new work and waits for the buffered messages to be
+     * written. Messages queued while the writer thread was finishing are
+     * written by the calling thread.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        List<InstantMessage> remaining = new ArrayList<InstantMessage>();
+        buffer.drainTo(remaining);
+        insert(remaining);
+    }
+
+    @ManagedAttribute(description = "Number of instant messages written")
+    public long getWritten() {
+        return written.get();
+    }
+
+    @ManagedAttribute(description = "Number of batches written")
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @ManagedAttribute(description = "Average number of instant messages per batch")
+    public long getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : written.get() / count;
+    }
+
+    @ManagedAttribute(description = "Largest number of instant messages in a batch")
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    @ManagedAttribute(description = "Number of instant messages waiting to be written")
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    @ManagedAttribute(description = "Milliseconds between sending and writing the oldest message of the last batch")
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @ManagedAttribute(description = "Number of instant messages dropped because the buffer was full or the writer was stopped")
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Number of instant messages that could not be written")
+    public long getFailed() {
+        return failed.get();
+    }
+}
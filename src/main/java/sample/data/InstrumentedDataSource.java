@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import sample.metrics.LatencyHistogram;
+
+/**
+ * Measures how long it takes to obtain a {@link Connection} from the target
+ * {@link DataSource}, recording each acquisition in a fixed set of latency
+ * buckets. When the target is a Tomcat JDBC pool, the pool's active, idle and
+ * waiting counts are exposed as well.
+ *
+ * <p>
+ * The target is closed (or shut down if it is an {@link EmbeddedDatabase})
+ * when the context is closed.
+ * </p>
+ */
+@ManagedResource
+public class InstrumentedDataSource extends DelegatingDataSource implements DisposableBean {
+    private final LatencyHistogram acquireLatency = new LatencyHistogram();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    public InstrumentedDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection();
+            acquireLatency.recordSince(start);
+            return connection;
+        } catch(SQLException e) {
+            failed.incrementAndGet();
+            throw e;
+        } catch(RuntimeException e) {
+            failed.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection connection = super.getConnection(username, password);
+            acquireLatency.recordSince(start);
+            return connection;
+        } catch(SQLException e) {
+            failed.incrementAndGet();
+            throw e;
+        } catch(RuntimeException e) {
+            failed.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @ManagedAttribute(description = "Number of connections obtained")
+    public long getConnectionsAcquired() {
+        return acquireLatency.getCount();
+    }
+
+    @ManagedAttribute(description = "Number of attempts to obtain a connection that failed or timed out")
+    public long getAcquireFailures() {
+        return failed.get();
+    }
+
+    @ManagedAttribute(description = "Average time to obtain a connection in microseconds")
+    public long getAverageAcquireMicros() {
+        return acquireLatency.getAverageMicros();
+    }
+
+    @ManagedAttribute(description = "Longest time to obtain a connection in microseconds")
+    public long getMaxAcquireMicros() {
+        return acquireLatency.getMaxMicros();
+    }
+
+    @ManagedAttribute(description = "Connections obtained per acquire latency bucket")
+    public String[] getAcquireLatencyHistogram() {
+        return acquireLatency.getBuckets();
+    }
+
+    @ManagedAttribute(description = "Connections currently borrowed from the pool, -1 if not pooled")
+    public int getActiveConnections() {
+        org.apache.tomcat.jdbc.pool.DataSource pool = getPool();
+        return pool == null ? -1 : pool.getActive();
+    }
+
+    @ManagedAttribute(description = "Idle connections in the pool, -1 if not pooled")
+    public int getIdleConnections() {
+        org.apache.tomcat.jdbc.pool.DataSource pool = getPool();
+        return pool == null ? -1 : pool.getIdle();
+    }
+
+    @ManagedAttribute(description = "Threads waiting for a connection from the pool, -1 if not pooled")
+    public int getPendingConnections() {
+        org.apache.tomcat.jdbc.pool.DataSource pool = getPool();
+        return pool == null ? -1 : pool.getWaitCount();
+    }
+
+    private org.apache.tomcat.jdbc.pool.DataSource getPool() {
+        DataSource target = getTargetDataSource();
+        return target instanceof org.apache.tomcat.jdbc.pool.DataSource ?
+                (org.apache.tomcat.jdbc.pool.DataSource) target : null;
+    }
+
+    @Override
+    public void destroy() {
+        DataSource target = getTargetDataSource();
+        if(target instanceof EmbeddedDatabase) {
+            ((EmbeddedDatabase) target).shutdown();
+        } else if(target instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            ((org.apache.tomcat.jdbc.pool.DataSource) target).close();
+        }
+    }
+}
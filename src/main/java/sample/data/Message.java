@@ -15,13 +15,20 @@
  */
 package sample.data;
 
-import java.util.Calendar;
+import java.time.Instant;
 
+import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.OneToOne;
+import javax.persistence.Index;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.validator.constraints.NotEmpty;
@@ -32,7 +39,17 @@ import org.hibernate.validator.constraints.NotEmpty;
  * @author Rob Winch
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "message_to_archived_created_id", columnList = "to_id,archived,created,id"),
+        @Index(name = "message_from_id", columnList = "from_id") })
+@NamedEntityGraph(name = Message.DETAIL_GRAPH, attributeNodes = { @NamedAttributeNode("to"), @NamedAttributeNode("from") })
 public class Message {
+    /**
+     * The name of the entity graph that fetches the sender and recipient along
+     * with the {@link Message}.
+     */
+    public static final String DETAIL_GRAPH = "Message.detail";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
@@ -43,13 +60,17 @@ public class Message {
     @NotEmpty(message = "Summary is required.")
     private String summary;
 
-    private Calendar created = Calendar.getInstance();
+    @Convert(converter = InstantConverter.class)
+    private Instant created = Instant.now();
+
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean archived;
 
-    @OneToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @NotNull
     private User to;
 
-    @OneToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @NotNull
     private User from;
     
@@ -77,14 +98,22 @@ public class Message {
         this.id = id;
     }
 
-    public Calendar getCreated() {
+    public Instant getCreated() {
         return created;
     }
 
-    public void setCreated(Calendar created) {
+    public void setCreated(Instant created) {
         this.created = created;
     }
 
+    public boolean isArchived() {
+        return archived;
+    }
+
+    public void setArchived(boolean archived) {
+        this.archived = archived;
+    }
+
     public String getText() {
         return text;
     }
@@ -15,9 +15,18 @@
  */
 package sample.data;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Manages {@link Message} instances
@@ -27,9 +36,80 @@ import org.springframework.security.access.prepost.PostAuthorize;
  */
 public interface MessageRepository extends CrudRepository<Message, Long> {
 
-    @Query("select m from Message m where m.to.id = ?#{principal.id}")
-    Iterable<Message> findAllToCurrentUser();
+    /**
+     * Finds the newest {@link MessageSummary} instances for the current user that
+     * are not archived.
+     */
+    @Query("select new sample.data.MessageSummary(m.id, m.summary, m.created, m.from.email) from Message m "
+            + "where m.to.id = :#{principal.id} and m.archived = false "
+            + "order by m.created desc, m.id desc")
+    List<MessageSummary> findInboxToCurrentUser(Pageable pageable);
+
+    /**
+     * Finds the {@link MessageSummary} instances for the current user that are
+     * older than the given position, newest first.
+     */
+    @Query("select new sample.data.MessageSummary(m.id, m.summary, m.created, m.from.email) from Message m "
+            + "where m.to.id = :#{principal.id} and m.archived = false "
+            + "and (m.created < :created or (m.created = :created and m.id < :id)) "
+            + "order by m.created desc, m.id desc")
+    List<MessageSummary> findInboxToCurrentUserOlderThan(@Param("created") Instant created, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds the {@link MessageSummary} instances for the current user that are
+     * newer than the given position, oldest first.
+     */
+    @Query("select new sample.data.MessageSummary(m.id, m.summary, m.created, m.from.email) from Message m "
+            + "where m.to.id = :#{principal.id} and m.archived = false "
+            + "and (m.created > :created or (m.created = :created and m.id > :id)) "
+            + "order by m.created asc, m.id asc")
+    List<MessageSummary> findInboxToCurrentUserNewerThan(@Param("created") Instant created, @Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds the {@link Message} with the given id only if it was sent to the
+     * current user, so ownership is checked by the query rather than after the
+     * {@link Message} is loaded.
+     *
+     * @return the {@link Message} or null if it does not exist or was not sent to
+     * the current user
+     */
+    @EntityGraph(Message.DETAIL_GRAPH)
+    @Query("select m from Message m where m.id = :id and m.to.id = :#{principal.id}")
+    Message findOneToCurrentUser(@Param("id") Long id);
+
+    /**
+     * Finds which of the given ids are of {@link Message} instances sent to the
+     * given user.
+     */
+    @Query("select m.id from Message m where m.to.id = :toId and m.id in :ids")
+    List<Long> findIdsToUser(@Param("toId") Long toId, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Deletes the {@link Message} instances with the given ids that were sent to
+     * the given user in a single statement. Ids of other users' messages are
+     * ignored.
+     *
+     * @return the number of {@link Message} instances deleted
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("delete from Message m where m.to.id = :toId and m.id in :ids")
+    int deleteToUser(@Param("toId") Long toId, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Archives the {@link Message} instances with the given ids that were sent to
+     * the given user in a single statement, removing them from the inbox. Ids of
+     * other users' messages are ignored.
+     *
+     * @return the number of {@link Message} instances archived
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update Message m set m.archived = true where m.to.id = :toId and m.id in :ids")
+    int archiveToUser(@Param("toId") Long toId, @Param("ids") Collection<Long> ids);
 
+    @EntityGraph(Message.DETAIL_GRAPH)
+    @Query("select m from Message m where m.id = :id")
     @PostAuthorize("hasPermission(returnObject,'read')")
-    Message findOne(Long id);
+    Message findOne(@Param("id") Long id);
 }
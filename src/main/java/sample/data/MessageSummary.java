@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.data;
+
+import java.time.Instant;
+
+/**
+ * A read only view of a {@link Message} used for listing the inbox. It does not
+ * contain the text of the {@link Message} or the full {@link User} instances so
+ * that it can be populated without loading either.
+ */
+public class MessageSummary {
+    private final Long id;
+
+    private final String summary;
+
+    private final Instant created;
+
+    private final String fromEmail;
+
+    public MessageSummary(Long id, String summary, Instant created, String fromEmail) {
+        this.id = id;
+        this.summary = summary;
+        this.created = created;
+        this.fromEmail = fromEmail;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public String getFromEmail() {
+        return fromEmail;
+    }
+}
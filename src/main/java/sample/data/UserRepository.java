@@ -15,15 +15,16 @@
  */
 package sample.data;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
 
 /**
- * Allows managing {@link User} instances.
+ * Allows managing {@link User} instances. It is a {@link JpaRepository} so that
+ * a {@link User} can be referenced by id without loading it.
  *
  * @author Rob Winch
  *
  */
-public interface UserRepository extends CrudRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long> {
 
     User findByEmail(String email);
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies into a fixed set of buckets, along with their count,
+ * average and maximum. Safe to use from multiple threads without locking.
+ */
+public class LatencyHistogram {
+    private static final long[] BUCKET_BOUNDS_MICROS = { 100, 1000, 5000, 10000, 50000, 100000, 500000, 1000000 };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the
+     * operation started
+     */
+    public void recordSince(long startNanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public void record(long micros) {
+        int bucket = 0;
+        while(bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while(micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getAverageMicros() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : totalMicros.get() / recorded;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * The number of latencies recorded per bucket. Each bucket counts the
+     * latencies above the previous bucket's bound and no higher than its own,
+     * the last bucket counts everything higher.
+     *
+     * @return a description of each bucket and its count, such as "<=1000us: 5"
+     */
+    public String[] getBuckets() {
+        String[] histogram = new String[buckets.length()];
+        for(int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            histogram[i] = "<=" + BUCKET_BOUNDS_MICROS[i] + "us: " + buckets.get(i);
+        }
+        histogram[BUCKET_BOUNDS_MICROS.length] = ">" + BUCKET_BOUNDS_MICROS[BUCKET_BOUNDS_MICROS.length - 1] + "us: " + buckets.get(BUCKET_BOUNDS_MICROS.length);
+        return histogram;
+    }
+}
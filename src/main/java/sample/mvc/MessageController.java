@@ -16,30 +16,50 @@
 package sample.mvc;
 
 import java.security.Principal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import sample.data.ActiveWebSocketUserRepository;
 import sample.data.InstantMessage;
+import sample.data.InstantMessageRepository;
+import sample.data.InstantMessageWriter;
 import sample.data.Message;
 import sample.data.MessageRepository;
+import sample.data.MessageSummary;
 import sample.data.User;
 import sample.data.UserRepository;
 import sample.security.CurrentUser;
+import sample.security.UserPrincipal;
+import sample.websocket.PresenceRegistry;
 
 /**
  * Controller for managing {@link Message} instances.
@@ -50,23 +70,72 @@ import sample.security.CurrentUser;
 @Controller
 @RequestMapping("/")
 public class MessageController {
+    private static final int INBOX_PAGE_SIZE = 20;
+
+    private static final int IM_HISTORY_PAGE_SIZE = 50;
+
     private MessageRepository messageRepository;
     private UserRepository userRepository;
 	private SimpMessageSendingOperations messagingTemplate;
-	private ActiveWebSocketUserRepository activeUserRepository;
+	private PresenceRegistry presenceRegistry;
+	private InstantMessageWriter instantMessageWriter;
+	private InstantMessageRepository instantMessageRepository;
+	private PermissionEvaluator permissionEvaluator;
 
     @Autowired
-    public MessageController(ActiveWebSocketUserRepository activeUserRepository,SimpMessageSendingOperations messagingTemplate,MessageRepository messageRepository,UserRepository userRepository) {
-    	this.activeUserRepository = activeUserRepository;
+    public MessageController(PresenceRegistry presenceRegistry,SimpMessageSendingOperations messagingTemplate,MessageRepository messageRepository,UserRepository userRepository,InstantMessageWriter instantMessageWriter,InstantMessageRepository instantMessageRepository,PermissionEvaluator permissionEvaluator) {
+    	this.permissionEvaluator = permissionEvaluator;
+    	this.presenceRegistry = presenceRegistry;
+    	this.instantMessageWriter = instantMessageWriter;
+    	this.instantMessageRepository = instantMessageRepository;
     	this.messagingTemplate = messagingTemplate;
         this.messageRepository = messageRepository;
         this.userRepository = userRepository;
     }
 
+    /**
+     * Displays a page of the inbox. The page is located by the created date and
+     * id of the message it is older or newer than (keyset pagination), so the
+     * cost of displaying a page does not depend on how far into the inbox it is.
+     * Paging newer from near the top would leave a short page, so the first page
+     * is displayed instead.
+     */
     @RequestMapping(method=RequestMethod.GET)
-    public ModelAndView list() {
-        Iterable<Message> messages = messageRepository.findAllToCurrentUser();
-        return new ModelAndView("messages/inbox", "messages", messages);
+    public ModelAndView list(@RequestParam(required=false) Long created, @RequestParam(required=false) Long id,
+            @RequestParam(required=false) String direction) {
+        Pageable page = new PageRequest(0, INBOX_PAGE_SIZE + 1);
+        boolean hasCursor = created != null && id != null;
+        boolean newer = hasCursor && "newer".equals(direction);
+        List<MessageSummary> messages = null;
+        if(newer) {
+            messages = messageRepository.findInboxToCurrentUserNewerThan(Instant.ofEpochMilli(created), id, page);
+            if(messages.size() <= INBOX_PAGE_SIZE) {
+                hasCursor = false;
+                newer = false;
+                messages = null;
+            }
+        } else if(hasCursor) {
+            messages = messageRepository.findInboxToCurrentUserOlderThan(Instant.ofEpochMilli(created), id, page);
+        }
+        if(messages == null) {
+            messages = messageRepository.findInboxToCurrentUser(page);
+        }
+        boolean more = messages.size() > INBOX_PAGE_SIZE;
+        if(more) {
+            messages = new ArrayList<MessageSummary>(messages.subList(0, INBOX_PAGE_SIZE));
+        }
+        if(newer) {
+            Collections.reverse(messages);
+        }
+        boolean hasOlder = newer || more;
+        boolean hasNewer = newer ? more : hasCursor;
+
+        ModelAndView mav = new ModelAndView("messages/inbox", "messages", messages);
+        if(!messages.isEmpty()) {
+            mav.addObject("older", hasOlder ? messages.get(messages.size() - 1) : null);
+            mav.addObject("newer", hasNewer ? messages.get(0) : null);
+        }
+        return mav;
     }
     
     @RequestMapping("/im")
@@ -74,16 +143,79 @@ public class MessageController {
     	return "messages/im";
     }
     
+    /**
+     * Relays an instant message to both users and queues it to be stored. A
+     * message that is empty or longer than
+     * {@link InstantMessage#MAX_MESSAGE_LENGTH} is rejected before it reaches
+     * either.
+     */
     @MessageMapping("/im")
-    public void im(InstantMessage im, Principal principal) {
+    public void im(@Valid @Payload InstantMessage im, Principal principal) {
         im.setFrom(principal.getName());
+        im.setCreated(Instant.now());
         messagingTemplate.convertAndSendToUser(im.getTo(),"/queue/messages",im);
         messagingTemplate.convertAndSendToUser(im.getFrom(),"/queue/messages",im);
+        instantMessageWriter.write(im);
+    }
+
+    /**
+     * Tells the sender why an instant message was rejected.
+     */
+    @MessageExceptionHandler(MethodArgumentNotValidException.class)
+    @SendToUser(value = "/queue/errors", broadcast = false)
+    public String invalidIm(MethodArgumentNotValidException e) {
+        BindingResult result = e.getBindingResult();
+        return result == null || !result.hasErrors() ? "Invalid message" : result.getAllErrors().get(0).getDefaultMessage();
+    }
+
+    /**
+     * Sends the newest instant messages between the current user and another
+     * user when a chat is opened.
+     */
+    @SubscribeMapping("/im/history/{with}")
+    public List<InstantMessage> subscribeImHistory(@DestinationVariable String with, Principal principal) {
+        return findImHistory(principal.getName(), with, null, null);
     }
 
+    /**
+     * Gets a page of instant messages between the current user and another user,
+     * oldest first. The page is located by the created date and id of the
+     * oldest message already displayed (keyset pagination).
+     */
+    @RequestMapping(value = "/im/history", method = RequestMethod.GET)
+    @ResponseBody
+    public List<InstantMessage> imHistory(@CurrentUser UserPrincipal currentUser, @RequestParam String with,
+            @RequestParam(required=false) Long created, @RequestParam(required=false) Long id) {
+        return findImHistory(currentUser.getEmail(), with, created, id);
+    }
+
+    private List<InstantMessage> findImHistory(String username, String with, Long created, Long id) {
+        String conversationKey = InstantMessage.conversationKey(username, with);
+        Pageable page = new PageRequest(0, IM_HISTORY_PAGE_SIZE);
+        List<InstantMessage> messages = created == null || id == null ?
+                instantMessageRepository.findConversation(conversationKey, page) :
+                instantMessageRepository.findConversationOlderThan(conversationKey, Instant.ofEpochMilli(created), id, page);
+        messages = new ArrayList<InstantMessage>(messages);
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    /**
+     * Displays a {@link Message}. The recipient is served by a single query on
+     * id and recipient. Anyone else is only served if the
+     * {@link PermissionEvaluator} grants "read" on the id, which it decides
+     * without loading the {@link Message}.
+     */
     @RequestMapping(value = "{id}", method=RequestMethod.GET)
     public ModelAndView view(@PathVariable Long id) {
-        Message message = messageRepository.findOne(id);
+        Message message = messageRepository.findOneToCurrentUser(id);
+        if(message == null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if(!permissionEvaluator.hasPermission(authentication, id, Message.class.getName(), "read")) {
+                throw new AccessDeniedException("Access is denied");
+            }
+            message = messageRepository.findOne(id);
+        }
         return new ModelAndView("messages/show", "message", message);
     }
 
@@ -94,18 +226,34 @@ public class MessageController {
         return "redirect:/";
     }
 
+    @RequestMapping(value = "bulk", params = "delete", method = RequestMethod.POST)
+    public String deleteAll(@CurrentUser UserPrincipal currentUser, @RequestParam(value = "ids", required = false) List<Long> ids, RedirectAttributes redirect) {
+        int deleted = ids == null || ids.isEmpty() ? 0 : messageRepository.deleteToUser(currentUser.getId(), ids);
+        redirect.addFlashAttribute("deleted", deleted);
+        redirect.addFlashAttribute("globalMessage", deleted + " message(s) removed successfully");
+        return "redirect:/";
+    }
+
+    @RequestMapping(value = "bulk", params = "archive", method = RequestMethod.POST)
+    public String archiveAll(@CurrentUser UserPrincipal currentUser, @RequestParam(value = "ids", required = false) List<Long> ids, RedirectAttributes redirect) {
+        int archived = ids == null || ids.isEmpty() ? 0 : messageRepository.archiveToUser(currentUser.getId(), ids);
+        redirect.addFlashAttribute("archived", archived);
+        redirect.addFlashAttribute("globalMessage", archived + " message(s) archived successfully");
+        return "redirect:/";
+    }
+
     @RequestMapping(params="form", method=RequestMethod.GET)
     public String createForm(@ModelAttribute MessageForm messageForm) {
         return "messages/compose";
     }
     
     @SubscribeMapping("/users")
-	public List<String> subscribeMessages() throws Exception {
-		return activeUserRepository.findAllActiveUsers();
+	public List<String> subscribeMessages(Principal principal) throws Exception {
+		return presenceRegistry.getActiveUsers(principal == null ? null : principal.getName());
 	}
 
     @RequestMapping(method=RequestMethod.POST)
-    public String create(@CurrentUser User currentUser, @Valid MessageForm messageForm, BindingResult result, RedirectAttributes redirect) {
+    public String create(@CurrentUser UserPrincipal currentUser, @Valid MessageForm messageForm, BindingResult result, RedirectAttributes redirect) {
         User to = userRepository.findByEmail(messageForm.getToEmail());
         if(to == null) {
             result.rejectValue("toEmail","toEmail", "User not found");
@@ -118,7 +266,7 @@ public class MessageController {
         message.setSummary(messageForm.getSummary());
         message.setText(messageForm.getText());
         message.setTo(to);
-        message.setFrom(currentUser);
+        message.setFrom(userRepository.getOne(currentUser.getId()));
 
         message = messageRepository.save(message);
         
@@ -15,19 +15,18 @@
  */
 package sample.mvc;
 
-import java.util.List;
-
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import sample.data.User;
 import sample.data.UserRepository;
+import sample.security.Role;
+import sample.security.UserPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
@@ -45,10 +44,14 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 @RequestMapping("/signup")
 public class SignupController {
     private UserRepository userRepository;
+    private UserCache userCache;
+    private PasswordEncoder passwordEncoder;
 
     @Autowired
-    public SignupController(UserRepository userRepository) {
+    public SignupController(UserRepository userRepository, UserCache userCache, PasswordEncoder passwordEncoder) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.passwordEncoder = passwordEncoder;
     }
 
     @RequestMapping(method = RequestMethod.GET)
@@ -62,15 +65,14 @@ public class SignupController {
         if (result.hasErrors()) {
             return "user/signup";
         }
+        user.setPassword(passwordEncoder.encode(user.getPassword()));
         user = userRepository.save(user);
+        userCache.removeUserFromCache(user.getEmail());
         redirect.addFlashAttribute("globalMessage", "Successfully signed up");
 
-        List<GrantedAuthority> authorities =
-            AuthorityUtils.createAuthorityList("ROLE_USER");
-        UserDetails userDetails = new org.springframework.security.core.userdetails
-            .User(user.getEmail(),user.getPassword(), authorities);
+        UserPrincipal principal = UserPrincipal.of(user, Role.USER).withoutCredentials();
         Authentication auth =
-            new UsernamePasswordAuthenticationToken(userDetails, user.getPassword(), authorities);
+            new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
         SecurityContextHolder.getContext().setAuthentication(auth);
         return "redirect:/";
     }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.Assert;
+
+/**
+ * A BCrypt {@link PasswordEncoder} whose strength (log rounds) can be calibrated
+ * to the hardware it runs on. BCrypt records the strength in every hash (i.e.
+ * "$2a$10$..."), so hashes of any strength continue to match and
+ * {@link #upgradeEncoding(String)} tells when a stored hash should be replaced
+ * by one of the current strength.
+ */
+@ManagedResource
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2a?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private static final Log logger = LogFactory.getLog(AdaptiveBCryptPasswordEncoder.class);
+
+    private static final int CALIBRATION_WARMUPS = 2;
+
+    private static final int CALIBRATION_SAMPLES = 5;
+
+    private final int strength;
+
+    private final long hashMillis;
+
+    private final AtomicLong hashesUpgraded = new AtomicLong();
+
+    public AdaptiveBCryptPasswordEncoder(int strength) {
+        this(strength, -1);
+    }
+
+    private AdaptiveBCryptPasswordEncoder(int strength, long hashMillis) {
+        Assert.isTrue(strength >= 4 && strength <= 31, "strength must be between 4 and 31");
+        this.strength = strength;
+        this.hashMillis = hashMillis;
+    }
+
+    /**
+     * Creates an instance with the greatest strength whose hash takes no longer
+     * than the target time on this machine. Each additional round doubles the
+     * cost of a hash, so only the minimum strength is measured and the rest is
+     * extrapolated. The median of several hashes is used, so a cold JIT or a
+     * busy machine does not skew the result. Since the result can still differ
+     * between restarts and machines, a cluster should rather use a fixed
+     * strength.
+     *
+     * @param targetMillis the time a single hash should take
+     * @param minStrength the strength to use even if it is slower than the target
+     * @param maxStrength the strength to never exceed
+     */
+    public static AdaptiveBCryptPasswordEncoder calibrate(long targetMillis, int minStrength, int maxStrength) {
+        Assert.isTrue(minStrength <= maxStrength, "minStrength cannot be greater than maxStrength");
+        String salt = BCrypt.gensalt(minStrength);
+        for(int i = 0; i < CALIBRATION_WARMUPS; i++) {
+            BCrypt.hashpw("calibrate", salt);
+        }
+        double[] samples = new double[CALIBRATION_SAMPLES];
+        for(int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibrate", salt);
+            samples[i] = (System.nanoTime() - start) / 1000000.0;
+        }
+        Arrays.sort(samples);
+        double millis = Math.max(samples[samples.length / 2], 0.001);
+
+        int strength = minStrength;
+        while(strength < maxStrength && millis * 2 <= targetMillis) {
+            millis *= 2;
+            strength++;
+        }
+        if(logger.isInfoEnabled()) {
+            logger.info("Using BCrypt strength " + strength + " (~" + Math.round(millis) + " ms, ~"
+                    + Math.round(1000 / millis) + " logins/sec per core)");
+        }
+        return new AdaptiveBCryptPasswordEncoder(strength, Math.round(millis));
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return BCrypt.hashpw(rawPassword.toString(), BCrypt.gensalt(strength));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if(encodedPassword == null || !BCRYPT_PATTERN.matcher(encodedPassword).matches()) {
+            return false;
+        }
+        return BCrypt.checkpw(rawPassword.toString(), encodedPassword);
+    }
+
+    /**
+     * Determines if the encoded password was hashed with a strength lower than
+     * the current strength (or is not a BCrypt hash at all). Stronger hashes are
+     * kept, so nodes that use different strengths do not keep replacing each
+     * other's hashes.
+     */
+    public boolean upgradeEncoding(String encodedPassword) {
+        if(encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+        return !matcher.matches() || Integer.parseInt(matcher.group(1)) < strength;
+    }
+
+    /**
+     * Hashes the password with the current strength to replace a stored hash
+     * for which {@link #upgradeEncoding(String)} returned true.
+     */
+    public String upgrade(CharSequence rawPassword) {
+        hashesUpgraded.incrementAndGet();
+        return encode(rawPassword);
+    }
+
+    @ManagedAttribute(description = "The BCrypt strength (log rounds) used for new hashes")
+    public int getStrength() {
+        return strength;
+    }
+
+    @ManagedAttribute(description = "Number of stored hashes replaced with one of the current strength")
+    public long getHashesUpgraded() {
+        return hashesUpgraded.get();
+    }
+
+    @ManagedAttribute(description = "Time in milliseconds to hash a password with the current strength as estimated by the calibration, or -1 if the strength was not calibrated")
+    public long getHashMillis() {
+        return hashMillis;
+    }
+
+    @ManagedOperation(description = "Hashes a password with the current strength and returns the time it took in milliseconds")
+    public long measureHashMillis() {
+        long start = System.nanoTime();
+        encode("measure");
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
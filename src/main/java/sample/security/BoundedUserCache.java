@@ -0,0 +1,146 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link UserCache} that holds at most a fixed number of {@link UserDetails},
+ * evicting the least recently used entry when full and any entry that is older
+ * than the time to live.
+ */
+@ManagedResource
+public class BoundedUserCache implements UserCache {
+    private final Map<String, CachedUser> cache;
+
+    private final long timeToLiveMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param maxSize the maximum number of users to cache
+     * @param timeToLiveSeconds how long a user is cached before it is loaded again
+     */
+    public BoundedUserCache(final int maxSize, int timeToLiveSeconds) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        Assert.isTrue(timeToLiveSeconds > 0, "timeToLiveSeconds must be greater than 0");
+        this.timeToLiveMillis = TimeUnit.SECONDS.toMillis(timeToLiveSeconds);
+        this.cache = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                boolean evict = size() > maxSize;
+                if(evict) {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+
+            private static final long serialVersionUID = 1L;
+        };
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        CachedUser cached;
+        synchronized (cache) {
+            cached = cache.get(username);
+            if(cached != null && cached.isExpired(timeToLiveMillis)) {
+                cache.remove(username);
+                evictions.incrementAndGet();
+                cached = null;
+            }
+        }
+        if(cached == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cached.user;
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        synchronized (cache) {
+            cache.put(user.getUsername(), new CachedUser(user));
+        }
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        synchronized (cache) {
+            cache.remove(username);
+        }
+    }
+
+    @ManagedOperation(description = "Removes every user from the cache")
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of lookups served from the cache")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of lookups that were not in the cache")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of users evicted due to size or time to live")
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @ManagedAttribute(description = "Number of users currently cached")
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private static final class CachedUser {
+        private final UserDetails user;
+
+        private final long created = System.currentTimeMillis();
+
+        private CachedUser(UserDetails user) {
+            this.user = user;
+        }
+
+        private boolean isExpired(long timeToLiveMillis) {
+            return System.currentTimeMillis() - created >= timeToLiveMillis;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.Collection;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+
+/**
+ * An {@link AccessDecisionManager} for inbound {@link Message}s that consults a
+ * {@link MessageAuthorizationCache} before delegating. Only MESSAGE and
+ * SUBSCRIBE frames are cached since they are the only ones sent repeatedly over
+ * the life of a session.
+ */
+public class CachingMessageAccessDecisionManager implements AccessDecisionManager {
+    private final AccessDecisionManager delegate;
+
+    private final MessageAuthorizationCache cache;
+
+    public CachingMessageAccessDecisionManager(AccessDecisionManager delegate, MessageAuthorizationCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public void decide(Authentication authentication, Object object, Collection<ConfigAttribute> configAttributes)
+            throws AccessDeniedException, InsufficientAuthenticationException {
+        if(!(object instanceof Message)) {
+            delegate.decide(authentication, object, configAttributes);
+            return;
+        }
+        MessageHeaders headers = ((Message<?>) object).getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if(sessionId == null || (type != SimpMessageType.MESSAGE && type != SimpMessageType.SUBSCRIBE)) {
+            delegate.decide(authentication, object, configAttributes);
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        Boolean granted = cache.get(sessionId, type, destination);
+        if(granted != null) {
+            if(!granted) {
+                throw new AccessDeniedException("Access is denied");
+            }
+            return;
+        }
+        try {
+            delegate.decide(authentication, object, configAttributes);
+        } catch(AccessDeniedException e) {
+            cache.put(sessionId, type, destination, false);
+            throw e;
+        }
+        cache.put(sessionId, type, destination, true);
+    }
+
+    @Override
+    public boolean supports(ConfigAttribute attribute) {
+        return delegate.supports(attribute);
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return delegate.supports(clazz);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.util.Assert;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Remembers the authorization decisions made for each WebSocket session by
+ * message type and destination. The user of a WebSocket session does not
+ * change, so as long as the rules only depend on the user, the message type and
+ * the destination, a decision can be reused for every later frame of the
+ * session. The decisions of a session are discarded when it disconnects.
+ */
+@ManagedResource
+public class MessageAuthorizationCache implements ApplicationListener<SessionDisconnectEvent> {
+    private final ConcurrentMap<String, ConcurrentMap<String, Boolean>> decisions = new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+
+    private final int maxDestinationsPerSession;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param maxDestinationsPerSession the maximum number of decisions to remember
+     * for a single session, so a client cannot grow the cache without bound by
+     * sending to ever new destinations
+     */
+    public MessageAuthorizationCache(int maxDestinationsPerSession) {
+        Assert.isTrue(maxDestinationsPerSession > 0, "maxDestinationsPerSession must be greater than 0");
+        this.maxDestinationsPerSession = maxDestinationsPerSession;
+    }
+
+    /**
+     * Gets a previous decision
+     *
+     * @return true if access was granted, false if it was denied, or null if no
+     * decision was made yet
+     */
+    public Boolean get(String sessionId, SimpMessageType type, String destination) {
+        ConcurrentMap<String, Boolean> session = decisions.get(sessionId);
+        Boolean granted = session == null ? null : session.get(key(type, destination));
+        if(granted == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return granted;
+    }
+
+    public void put(String sessionId, SimpMessageType type, String destination, boolean granted) {
+        ConcurrentMap<String, Boolean> session = decisions.get(sessionId);
+        if(session == null) {
+            ConcurrentMap<String, Boolean> created = new ConcurrentHashMap<String, Boolean>();
+            session = decisions.putIfAbsent(sessionId, created);
+            if(session == null) {
+                session = created;
+            }
+        }
+        if(session.size() < maxDestinationsPerSession) {
+            session.put(key(type, destination), granted);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        if(sessionId != null) {
+            decisions.remove(sessionId);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of authorization decisions reused")
+    public long getHits() {
+        return hits.get();
+    }
+
+    @ManagedAttribute(description = "Number of authorization decisions that had to be made")
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @ManagedAttribute(description = "Number of sessions with cached decisions")
+    public int getSessions() {
+        return decisions.size();
+    }
+
+    private static String key(SimpMessageType type, String destination) {
+        return destination == null ? type.name() : type.name() + ':' + destination;
+    }
+}
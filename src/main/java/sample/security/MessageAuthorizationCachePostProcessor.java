@@ -0,0 +1,51 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.security.messaging.access.intercept.ChannelSecurityInterceptor;
+
+/**
+ * Decorates the {@link org.springframework.security.access.AccessDecisionManager}
+ * of every {@link ChannelSecurityInterceptor} with a
+ * {@link CachingMessageAccessDecisionManager}.
+ */
+public class MessageAuthorizationCachePostProcessor implements BeanPostProcessor, BeanFactoryAware {
+    private BeanFactory beanFactory;
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if(bean instanceof ChannelSecurityInterceptor) {
+            ChannelSecurityInterceptor interceptor = (ChannelSecurityInterceptor) bean;
+            MessageAuthorizationCache cache = beanFactory.getBean(MessageAuthorizationCache.class);
+            interceptor.setAccessDecisionManager(new CachingMessageAccessDecisionManager(interceptor.getAccessDecisionManager(), cache));
+        }
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+}
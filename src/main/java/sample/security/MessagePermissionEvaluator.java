@@ -16,25 +16,51 @@
 package sample.security;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
 import sample.data.Message;
-import sample.data.User;
+import sample.data.MessageRepository;
 import org.springframework.stereotype.Component;
 
 /**
+ * Grants the "read", "delete" and "archive" permissions on a {@link Message}
+ * to its recipient. Any other permission is rejected with an
+ * {@link IllegalArgumentException} rather than being treated as one of these.
+ *
  * @author Rob Winch
  *
  */
 @Component
 public class MessagePermissionEvaluator implements PermissionEvaluator {
+	private static final Set<String> RECIPIENT_PERMISSIONS = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList("read", "delete", "archive")));
+
+	private final MessageRepository messageRepository;
+
+	/**
+	 * The {@link MessageRepository} is lazy since it is secured with this
+	 * {@link PermissionEvaluator}.
+	 */
+	@Autowired
+	public MessagePermissionEvaluator(@Lazy MessageRepository messageRepository) {
+		this.messageRepository = messageRepository;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.springframework.security.access.PermissionEvaluator#hasPermission(org.springframework.security.core.Authentication, java.lang.Object, java.lang.Object)
 	 */
 	@Override
 	public boolean hasPermission(Authentication authentication,
 			Object targetDomainObject, Object permission) {
+		assertKnownPermission(permission);
 		if(authentication == null) {
 			return false;
 		}
@@ -42,8 +68,8 @@ public class MessagePermissionEvaluator implements PermissionEvaluator {
 		if(message == null) {
 			return true;
 		}
-		User currentUser = (User) authentication.getPrincipal();
-		return currentUser.getId().equals(message.getTo().getId());
+		UserPrincipal currentUser = (UserPrincipal) authentication.getPrincipal();
+		return message.getTo().getId() == currentUser.getId();
 	}
 
 	/* (non-Javadoc)
@@ -52,7 +78,42 @@ public class MessagePermissionEvaluator implements PermissionEvaluator {
 	@Override
 	public boolean hasPermission(Authentication authentication,
 			Serializable targetId, String targetType, Object permission) {
-		throw new UnsupportedOperationException();
+		assertKnownPermission(permission);
+		if(!(targetId instanceof Long) || !isMessageType(targetType)) {
+			return false;
+		}
+		Long id = (Long) targetId;
+		return getPermittedMessageIds(authentication, Collections.singleton(id), permission).contains(id);
+	}
+
+	/**
+	 * Determines which of the {@link Message} ids the user has the permission
+	 * for using a single query, rather than loading and evaluating each
+	 * {@link Message}.
+	 *
+	 * @return the permitted subset of the ids. Ids of {@link Message} instances
+	 * that do not exist are never permitted.
+	 * @throws IllegalArgumentException if the permission is not "read", "delete"
+	 * or "archive"
+	 */
+	public Set<Long> getPermittedMessageIds(Authentication authentication,
+			Collection<Long> ids, Object permission) {
+		assertKnownPermission(permission);
+		if(authentication == null || ids.isEmpty()) {
+			return Collections.emptySet();
+		}
+		UserPrincipal currentUser = (UserPrincipal) authentication.getPrincipal();
+		return new HashSet<Long>(messageRepository.findIdsToUser(currentUser.getId(), ids));
+	}
+
+	private static void assertKnownPermission(Object permission) {
+		if(!RECIPIENT_PERMISSIONS.contains(permission)) {
+			throw new IllegalArgumentException("Unknown permission " + permission + ", expected one of " + RECIPIENT_PERMISSIONS);
+		}
+	}
+
+	private static boolean isMessageType(String targetType) {
+		return Message.class.getName().equals(targetType) || Message.class.getSimpleName().equals(targetType);
 	}
 
 }
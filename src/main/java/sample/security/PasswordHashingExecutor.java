@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.Assert;
+
+/**
+ * Verifies and encodes passwords on a dedicated, bounded pool of threads so
+ * that a burst of logins cannot tie up every request thread hashing passwords.
+ * When every thread is busy and the queue is full, or a result is not ready
+ * within the timeout, the operation fails with a {@link LoginThrottledException}.
+ */
+@ManagedResource
+public class PasswordHashingExecutor implements DisposableBean {
+    private final ThreadPoolExecutor executor;
+
+    private final int retryAfterSeconds;
+
+    private final long timeoutMillis;
+
+    private final AtomicLong hashes = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong timedOut = new AtomicLong();
+
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    private final AtomicLong totalHashNanos = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param threads the number of passwords to hash at once
+     * @param queueCapacity the number of hashes allowed to wait for a thread. If
+     * 0, hashes are rejected whenever every thread is busy.
+     * @param retryAfterSeconds the number of seconds a rejected client is told to wait
+     * @param timeoutMillis the longest time a request thread waits for a hash,
+     * including the time it is queued
+     */
+    public PasswordHashingExecutor(int threads, int queueCapacity, int retryAfterSeconds, long timeoutMillis) {
+        Assert.isTrue(threads > 0, "threads must be greater than 0");
+        Assert.isTrue(queueCapacity >= 0, "queueCapacity cannot be negative");
+        Assert.isTrue(timeoutMillis > 0, "timeoutMillis must be greater than 0");
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.timeoutMillis = timeoutMillis;
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ?
+                new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                queue, new CustomizableThreadFactory("password-hashing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Verifies the password with the given {@link PasswordEncoder} on the pool,
+     * waiting for the result.
+     *
+     * @throws LoginThrottledException if the pool and queue are full or the
+     * result is not ready in time
+     */
+    public boolean matches(final PasswordEncoder passwordEncoder, final CharSequence rawPassword, final String encodedPassword) {
+        return execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return passwordEncoder.matches(rawPassword, encodedPassword);
+            }
+        });
+    }
+
+    /**
+     * Encodes the password with the given {@link PasswordEncoder} on the pool,
+     * waiting for the result.
+     *
+     * @throws LoginThrottledException if the pool and queue are full or the
+     * result is not ready in time
+     */
+    public String encode(final PasswordEncoder passwordEncoder, final CharSequence rawPassword) {
+        return execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return passwordEncoder.encode(rawPassword);
+            }
+        });
+    }
+
+    /**
+     * Upgrades the password with the given {@link AdaptiveBCryptPasswordEncoder}
+     * on the pool, waiting for the result.
+     *
+     * @throws LoginThrottledException if the pool and queue are full or the
+     * result is not ready in time
+     */
+    public String upgrade(final AdaptiveBCryptPasswordEncoder passwordEncoder, final CharSequence rawPassword) {
+        return execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return passwordEncoder.upgrade(rawPassword);
+            }
+        });
+    }
+
+    private <T> T execute(final Callable<T> hash) {
+        final long submitted = System.nanoTime();
+        Future<T> result;
+        try {
+            result = executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long started = System.nanoTime();
+                    totalQueueNanos.addAndGet(started - submitted);
+                    try {
+                        return hash.call();
+                    } finally {
+                        totalHashNanos.addAndGet(System.nanoTime() - started);
+                        hashes.incrementAndGet();
+                    }
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw new LoginThrottledException("Too many logins in progress", retryAfterSeconds);
+        }
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException e) {
+            result.cancel(true);
+            timedOut.incrementAndGet();
+            throw new LoginThrottledException("Timed out waiting to hash password", retryAfterSeconds);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            throw new AuthenticationServiceException("Interrupted while hashing password", e);
+        } catch(ExecutionException e) {
+            throw new AuthenticationServiceException("Could not hash password", e.getCause());
+        }
+    }
+
+    /**
+     * Creates a {@link PasswordEncoder} that verifies and encodes passwords on
+     * this pool with the given {@link PasswordEncoder}.
+     */
+    public PasswordEncoder decorate(final PasswordEncoder passwordEncoder) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return PasswordHashingExecutor.this.encode(passwordEncoder, rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return PasswordHashingExecutor.this.matches(passwordEncoder, rawPassword, encodedPassword);
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @ManagedAttribute(description = "Number of passwords hashed to verify or encode them")
+    public long getHashes() {
+        return hashes.get();
+    }
+
+    @ManagedAttribute(description = "Number of logins rejected because the pool was saturated")
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @ManagedAttribute(description = "Number of logins that failed because the hash was not ready in time")
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    @ManagedAttribute(description = "Number of hashes waiting for a thread")
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute(description = "Average time in milliseconds a hash waited for a thread")
+    public long getAverageQueueMillis() {
+        long count = hashes.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueNanos.get() / count);
+    }
+
+    @ManagedAttribute(description = "Average time in milliseconds to hash a password")
+    public long getAverageHashMillis() {
+        long count = hashes.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalHashNanos.get() / count);
+    }
+}
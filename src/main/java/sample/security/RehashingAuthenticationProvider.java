@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.Assert;
+
+import sample.data.User;
+import sample.data.UserRepository;
+
+/**
+ * A {@link DaoAuthenticationProvider} that, after the password was verified,
+ * replaces a stored hash that does not have the current strength of the
+ * {@link AdaptiveBCryptPasswordEncoder}. This allows the strength to change
+ * without invalidating existing passwords. The new hash is computed on the
+ * {@link PasswordHashingExecutor}, and skipped until a later login if the
+ * executor is saturated. The user is then removed from the
+ * {@link #setUserCache(org.springframework.security.core.userdetails.UserCache)
+ * user cache}.
+ */
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+    private final UserRepository userRepository;
+
+    private final AdaptiveBCryptPasswordEncoder passwordEncoder;
+
+    private final PasswordHashingExecutor passwordHashingExecutor;
+
+    public RehashingAuthenticationProvider(UserRepository userRepository,
+            AdaptiveBCryptPasswordEncoder passwordEncoder, PasswordHashingExecutor passwordHashingExecutor) {
+        Assert.notNull(userRepository, "userRepository cannot be null");
+        Assert.notNull(passwordHashingExecutor, "passwordHashingExecutor cannot be null");
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        setPasswordEncoder(passwordEncoder);
+    }
+
+    @Override
+    protected void additionalAuthenticationChecks(UserDetails userDetails,
+            UsernamePasswordAuthenticationToken authentication) throws AuthenticationException {
+        super.additionalAuthenticationChecks(userDetails, authentication);
+        if(passwordEncoder.upgradeEncoding(userDetails.getPassword())) {
+            rehash(userDetails.getUsername(), authentication.getCredentials().toString());
+        }
+    }
+
+    /**
+     * Uses a copy of a {@link UserPrincipal} without the password as the
+     * principal, since the loaded instance may be cached for later logins.
+     */
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal,
+            Authentication authentication, UserDetails user) {
+        if(principal instanceof UserPrincipal) {
+            principal = ((UserPrincipal) principal).withoutCredentials();
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+
+    private void rehash(String username, String rawPassword) {
+        User user = userRepository.findByEmail(username);
+        if(user == null) {
+            return;
+        }
+        try {
+            user.setPassword(passwordHashingExecutor.upgrade(passwordEncoder, rawPassword));
+        } catch(LoginThrottledException e) {
+            return;
+        }
+        userRepository.save(user);
+        getUserCache().removeUserFromCache(username);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * The roles a user of the application can have.
+ */
+public enum Role implements GrantedAuthority {
+    USER;
+
+    private final String authority = "ROLE_" + name();
+
+    private final int mask = 1 << ordinal();
+
+    @Override
+    public String getAuthority() {
+        return authority;
+    }
+
+    /**
+     * Gets the bit that represents this role in a {@link RoleSet}.
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    /**
+     * Finds the {@link Role} for an authority such as "ROLE_USER".
+     *
+     * @return the {@link Role} or null if the authority is not a known role
+     */
+    public static Role fromAuthority(String authority) {
+        for(Role role : values()) {
+            if(role.authority.equals(authority)) {
+                return role;
+            }
+        }
+        return null;
+    }
+}
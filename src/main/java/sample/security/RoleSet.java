@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.util.Assert;
+
+/**
+ * An immutable set of {@link Role}s backed by a bitmask. There is a single
+ * instance for every combination of roles, so principals share their
+ * authorities instead of each holding a copy, and membership is a bit test
+ * rather than a comparison of authority strings. The instances are created up
+ * front, which is only practical for the handful of roles an application has.
+ */
+public final class RoleSet extends AbstractSet<Role> implements Serializable {
+    private static final Role[] ROLES = Role.values();
+
+    private static final RoleSet[] SETS = new RoleSet[1 << ROLES.length];
+
+    static {
+        for(int bits = 0; bits < SETS.length; bits++) {
+            SETS[bits] = new RoleSet(bits);
+        }
+    }
+
+    private final int bits;
+
+    private final int size;
+
+    private RoleSet(int bits) {
+        this.bits = bits;
+        this.size = Integer.bitCount(bits);
+    }
+
+    /**
+     * Gets the {@link RoleSet} containing exactly the given roles.
+     */
+    public static RoleSet of(Role... roles) {
+        int bits = 0;
+        for(Role role : roles) {
+            bits |= role.getMask();
+        }
+        return SETS[bits];
+    }
+
+    /**
+     * Gets the {@link RoleSet} containing the given authorities, each of which
+     * must be a known {@link Role}.
+     *
+     * @throws IllegalArgumentException if an authority is not a {@link Role}
+     */
+    public static RoleSet copyOf(Collection<? extends GrantedAuthority> authorities) {
+        if(authorities instanceof RoleSet) {
+            return (RoleSet) authorities;
+        }
+        int bits = 0;
+        for(GrantedAuthority authority : authorities) {
+            Role role = authority instanceof Role ? (Role) authority : Role.fromAuthority(authority.getAuthority());
+            Assert.notNull(role, "Unknown role " + authority);
+            bits |= role.getMask();
+        }
+        return SETS[bits];
+    }
+
+    /**
+     * Gets the {@link RoleSet} for a bitmask returned by {@link #getBits()}.
+     *
+     * @throws IllegalArgumentException if a bit does not belong to a {@link Role}
+     */
+    public static RoleSet fromBits(int bits) {
+        Assert.isTrue(bits >= 0 && bits < SETS.length, "Unknown roles " + Integer.toBinaryString(bits));
+        return SETS[bits];
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Role && (bits & ((Role) o).getMask()) != 0;
+    }
+
+    /**
+     * Determines if every role of the given set is also in this one.
+     */
+    public boolean containsAll(RoleSet roles) {
+        return (bits & roles.bits) == roles.bits;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Role> iterator() {
+        return new Iterator<Role>() {
+            private int remaining = bits;
+
+            @Override
+            public boolean hasNext() {
+                return remaining != 0;
+            }
+
+            @Override
+            public Role next() {
+                if(remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                int ordinal = Integer.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                return ROLES[ordinal];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Object readResolve() {
+        return fromBits(bits);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
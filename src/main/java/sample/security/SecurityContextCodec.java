@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+
+import sample.session.AttributeCodec;
+import sample.session.SessionAttributeSerializer;
+
+/**
+ * Writes the {@link SecurityContextImpl} stored in the session of a user who
+ * logged in with a username and password as the {@link UserPrincipal}'s fields
+ * and the bitmask of its {@link RoleSet}. Any other {@link Authentication} is
+ * written by the {@link SessionAttributeSerializer}, which falls back to JDK
+ * serialization.
+ *
+ * <p>
+ * Contexts written by earlier versions, whose principal was the user entity,
+ * are read as a {@link UserPrincipal} without the password.
+ * </p>
+ */
+public class SecurityContextCodec implements AttributeCodec<SecurityContextImpl> {
+    private static final byte USER_AUTHENTICATION = 1;
+
+    private static final byte OTHER_AUTHENTICATION = 2;
+
+    private static final byte PRINCIPAL_AUTHENTICATION = 3;
+
+    @Override
+    public Class<SecurityContextImpl> getType() {
+        return SecurityContextImpl.class;
+    }
+
+    @Override
+    public void write(SecurityContextImpl context, DataOutput out, SessionAttributeSerializer serializer) throws IOException {
+        Authentication authentication = context.getAuthentication();
+        if(authentication == null || authentication.getClass() != UsernamePasswordAuthenticationToken.class
+                || !(authentication.getPrincipal() instanceof UserPrincipal)
+                || !hasRoleAuthorities(authentication)) {
+            out.writeByte(OTHER_AUTHENTICATION);
+            serializer.writeValue(authentication, out);
+            return;
+        }
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        out.writeByte(PRINCIPAL_AUTHENTICATION);
+        out.writeLong(principal.getId());
+        SessionAttributeSerializer.writeString(principal.getEmail(), out);
+        SessionAttributeSerializer.writeString(principal.getFirstName(), out);
+        SessionAttributeSerializer.writeString(principal.getPassword(), out);
+        out.writeInt(principal.getAuthorities().getBits());
+        out.writeInt(RoleSet.copyOf(authentication.getAuthorities()).getBits());
+        out.writeBoolean(authentication.isAuthenticated());
+        serializer.writeValue(authentication.getCredentials(), out);
+        serializer.writeValue(authentication.getDetails(), out);
+    }
+
+    @Override
+    public SecurityContextImpl read(DataInput in, SessionAttributeSerializer serializer) throws IOException {
+        SecurityContextImpl context = new SecurityContextImpl();
+        byte kind = in.readByte();
+        if(kind == OTHER_AUTHENTICATION) {
+            context.setAuthentication((Authentication) serializer.readValue(in));
+            return context;
+        }
+        UserPrincipal principal;
+        RoleSet authorities;
+        if(kind == USER_AUTHENTICATION) {
+            long id = in.readLong();
+            String email = SessionAttributeSerializer.readString(in);
+            String firstName = SessionAttributeSerializer.readString(in);
+            SessionAttributeSerializer.readString(in);
+            SessionAttributeSerializer.readString(in);
+            int bits = 0;
+            int authorityCount = in.readShort();
+            for(int i = 0; i < authorityCount; i++) {
+                Role role = Role.fromAuthority(SessionAttributeSerializer.readString(in));
+                if(role != null) {
+                    bits |= role.getMask();
+                }
+            }
+            authorities = RoleSet.fromBits(bits);
+            principal = new UserPrincipal(id, email, firstName, null, authorities);
+        } else if(kind == PRINCIPAL_AUTHENTICATION) {
+            long id = in.readLong();
+            String email = SessionAttributeSerializer.readString(in);
+            String firstName = SessionAttributeSerializer.readString(in);
+            String password = SessionAttributeSerializer.readString(in);
+            principal = new UserPrincipal(id, email, firstName, password, RoleSet.fromBits(in.readInt()));
+            authorities = RoleSet.fromBits(in.readInt());
+        } else {
+            throw new IOException("Unknown SecurityContext format " + kind);
+        }
+        boolean authenticated = in.readBoolean();
+        Object credentials = serializer.readValue(in);
+        UsernamePasswordAuthenticationToken authentication = authenticated ?
+                new UsernamePasswordAuthenticationToken(principal, credentials, authorities) :
+                new UsernamePasswordAuthenticationToken(principal, credentials);
+        authentication.setDetails(serializer.readValue(in));
+        context.setAuthentication(authentication);
+        return context;
+    }
+
+    /**
+     * A context that can no longer be read is replaced by an empty one, so the
+     * user is asked to log in again instead of the request failing.
+     */
+    @Override
+    public SecurityContextImpl createFallback() {
+        return new SecurityContextImpl();
+    }
+
+    private static boolean hasRoleAuthorities(Authentication authentication) {
+        for(GrantedAuthority authority : authentication.getAuthorities()) {
+            if(Role.fromAuthority(authority.getAuthority()) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
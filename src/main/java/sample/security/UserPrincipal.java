@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.security;
+
+import java.util.Collection;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.Assert;
+
+import sample.data.User;
+
+/**
+ * The immutable principal of an authenticated user. Only what is needed to
+ * identify the user and make authorization decisions is kept, rather than the
+ * {@link User} entity, since the principal is stored in the session.
+ *
+ * <p>
+ * The password is only present on the instance used to verify it. The
+ * principal of an {@link org.springframework.security.core.Authentication}
+ * is created with {@link #withoutCredentials()}.
+ * </p>
+ */
+public final class UserPrincipal implements UserDetails {
+    private final long id;
+
+    private final String email;
+
+    private final String firstName;
+
+    private final String password;
+
+    private final RoleSet roles;
+
+    public UserPrincipal(long id, String email, String firstName, String password, Collection<Role> roles) {
+        Assert.hasText(email, "email cannot be empty");
+        this.id = id;
+        this.email = email;
+        this.firstName = firstName;
+        this.password = password;
+        this.roles = RoleSet.copyOf(roles);
+    }
+
+    /**
+     * Creates a principal for the given {@link User}, including its password.
+     */
+    public static UserPrincipal of(User user, Role... roles) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getFirstName(), user.getPassword(), RoleSet.of(roles));
+    }
+
+    /**
+     * Gets a copy of this principal without the password.
+     */
+    public UserPrincipal withoutCredentials() {
+        return password == null ? this : new UserPrincipal(id, email, firstName, null, roles);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    @Override
+    public String getUsername() {
+        return email;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public RoleSet getAuthorities() {
+        return roles;
+    }
+
+    public boolean hasRole(Role role) {
+        return roles.contains(role);
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof UserPrincipal && email.equals(((UserPrincipal) obj).email);
+    }
+
+    @Override
+    public int hashCode() {
+        return email.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "UserPrincipal [id=" + id + ", email=" + email + ", roles=" + roles + "]";
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads session attribute values of a single type in a compact
+ * binary form for {@link SessionAttributeSerializer}.
+ *
+ * @param <T> the type of attribute value
+ */
+public interface AttributeCodec<T> {
+
+    /**
+     * The exact type of the values this codec handles. Subclasses are not
+     * matched.
+     */
+    Class<T> getType();
+
+    /**
+     * Writes the value. Nested values of other types can be written with
+     * {@link SessionAttributeSerializer#writeValue(Object, DataOutput)}.
+     */
+    void write(T value, DataOutput out, SessionAttributeSerializer serializer) throws IOException;
+
+    /**
+     * Reads a value written by {@link #write(Object, DataOutput, SessionAttributeSerializer)}.
+     */
+    T read(DataInput in, SessionAttributeSerializer serializer) throws IOException;
+
+    /**
+     * Creates the value to use in place of a stored value of this type that
+     * can no longer be read, for example because it was JDK serialized with a
+     * class that has since been removed.
+     *
+     * @return the replacement value, or null to fail the read
+     */
+    T createFallback();
+}
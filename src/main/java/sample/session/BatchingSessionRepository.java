@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.util.Collection;
+
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+/**
+ * A {@link SessionRepository} that can save several sessions at once more
+ * cheaply than one at a time.
+ */
+public interface BatchingSessionRepository<S extends Session> extends SessionRepository<S> {
+
+    /**
+     * Saves every given session. If this fails, any of the sessions may or may
+     * not have been saved.
+     *
+     * @param sessions the sessions to save
+     */
+    void saveAll(Collection<S> sessions);
+}
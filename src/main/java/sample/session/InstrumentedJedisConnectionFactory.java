@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import sample.metrics.LatencyHistogram;
+
+/**
+ * A {@link JedisConnectionFactory} that records how long it takes to borrow a
+ * {@link Jedis} from the pool and how often the pool was exhausted, that is
+ * no connection became available within the pool's max wait.
+ *
+ * <p>
+ * The pool's own active, idle and waiter counts are exported by commons-pool
+ * under the {@link JedisPoolConfig#getJmxNamePrefix() JMX name prefix}.
+ * </p>
+ */
+@ManagedResource
+public class InstrumentedJedisConnectionFactory extends JedisConnectionFactory {
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+
+    private final AtomicLong exhausted = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    public InstrumentedJedisConnectionFactory(JedisPoolConfig poolConfig) {
+        super(poolConfig);
+    }
+
+    @Override
+    protected Jedis fetchJedisConnector() {
+        long start = System.nanoTime();
+        try {
+            Jedis jedis = super.fetchJedisConnector();
+            borrowLatency.recordSince(start);
+            return jedis;
+        } catch(RuntimeException e) {
+            if(isExhausted(e)) {
+                exhausted.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * commons-pool signals that max wait elapsed without a connection becoming
+     * available with a {@link NoSuchElementException}.
+     */
+    private static boolean isExhausted(Throwable e) {
+        while(e != null) {
+            if(e instanceof NoSuchElementException) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    @ManagedAttribute(description = "Number of connections borrowed")
+    public long getConnectionsBorrowed() {
+        return borrowLatency.getCount();
+    }
+
+    @ManagedAttribute(description = "Number of times no connection was available within the max wait")
+    public long getPoolExhausted() {
+        return exhausted.get();
+    }
+
+    @ManagedAttribute(description = "Number of attempts to borrow a connection that failed for another reason")
+    public long getBorrowFailures() {
+        return failed.get();
+    }
+
+    @ManagedAttribute(description = "Average time to borrow a connection in microseconds")
+    public long getAverageBorrowMicros() {
+        return borrowLatency.getAverageMicros();
+    }
+
+    @ManagedAttribute(description = "Longest time to borrow a connection in microseconds")
+    public long getMaxBorrowMicros() {
+        return borrowLatency.getMaxMicros();
+    }
+
+    @ManagedAttribute(description = "Connections borrowed per borrow latency bucket")
+    public String[] getBorrowLatencyHistogram() {
+        return borrowLatency.getBuckets();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.session.ExpiringSession;
+import org.springframework.session.SessionRepository;
+import org.springframework.session.data.redis.RedisOperationsSessionRepository;
+import org.springframework.util.Assert;
+
+import sample.metrics.LatencyHistogram;
+
+/**
+ * Sends the commands issued to save a session in a single Redis pipeline.
+ *
+ * <p>
+ * {@link RedisOperationsSessionRepository} already tracks which attributes of
+ * a session changed and only writes those hash fields, but it issues the hash
+ * write and each of the expiration updates as a separate command, each
+ * waiting on its own round trip. Saving within a pipeline sends them together
+ * on one connection. {@link #saveAll(Collection)} sends the commands of
+ * several sessions in the same pipeline.
+ * </p>
+ */
+@ManagedResource
+public class PipelinedSessionRepository implements BatchingSessionRepository<ExpiringSession> {
+    private final SessionRepository<ExpiringSession> sessionRepository;
+
+    private final RedisOperations<?, ?> redisOperations;
+
+    private final LatencyHistogram saveLatency = new LatencyHistogram();
+
+    private final AtomicLong saves = new AtomicLong();
+
+    private final AtomicLong batchedSaves = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param sessionRepository the {@link SessionRepository} to save sessions with
+     * @param redisOperations the {@link RedisOperations} that uses the same
+     * connection factory as the {@link SessionRepository}
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public PipelinedSessionRepository(SessionRepository sessionRepository, RedisOperations<?, ?> redisOperations) {
+        Assert.notNull(sessionRepository, "sessionRepository cannot be null");
+        Assert.notNull(redisOperations, "redisOperations cannot be null");
+        this.sessionRepository = sessionRepository;
+        this.redisOperations = redisOperations;
+    }
+
+    @Override
+    public ExpiringSession createSession() {
+        return sessionRepository.createSession();
+    }
+
+    @Override
+    public void save(ExpiringSession session) {
+        pipeline(Collections.singletonList(session));
+    }
+
+    @Override
+    public void saveAll(Collection<ExpiringSession> sessions) {
+        if(sessions.isEmpty()) {
+            return;
+        }
+        pipeline(sessions);
+        if(sessions.size() > 1) {
+            batchedSaves.addAndGet(sessions.size());
+        }
+    }
+
+    private void pipeline(final Collection<ExpiringSession> sessions) {
+        long start = System.nanoTime();
+        redisOperations.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("rawtypes")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(ExpiringSession session : sessions) {
+                    sessionRepository.save(session);
+                }
+                return null;
+            }
+        });
+        saveLatency.recordSince(start);
+        saves.addAndGet(sessions.size());
+    }
+
+    @Override
+    public ExpiringSession getSession(String id) {
+        return sessionRepository.getSession(id);
+    }
+
+    @Override
+    public void delete(String id) {
+        sessionRepository.delete(id);
+    }
+
+    @ManagedAttribute(description = "Number of sessions saved")
+    public long getSaves() {
+        return saves.get();
+    }
+
+    @ManagedAttribute(description = "Number of sessions saved in the same pipeline as other sessions")
+    public long getBatchedSaves() {
+        return batchedSaves.get();
+    }
+
+    @ManagedAttribute(description = "Average time to send a pipeline of saves in microseconds")
+    public long getAverageSaveMicros() {
+        return saveLatency.getAverageMicros();
+    }
+
+    @ManagedAttribute(description = "Longest time to send a pipeline of saves in microseconds")
+    public long getMaxSaveMicros() {
+        return saveLatency.getMaxMicros();
+    }
+
+    @ManagedAttribute(description = "Pipelines of saves per latency bucket")
+    public String[] getSaveLatencyHistogram() {
+        return saveLatency.getBuckets();
+    }
+}
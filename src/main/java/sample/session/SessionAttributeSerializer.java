@@ -0,0 +1,279 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+
+/**
+ * Serializes the values stored in a session's Redis hash. Strings, numbers,
+ * booleans and any type with a registered {@link AttributeCodec} are written
+ * in a compact binary form, everything else uses JDK serialization.
+ *
+ * <p>
+ * Every value starts with a format version. Values written with plain JDK
+ * serialization, as before this serializer was used, are still read. To
+ * upgrade a cluster without downtime first deploy every node with compact
+ * writes disabled, so that all nodes can read the compact format, then enable
+ * them.
+ * </p>
+ *
+ * <p>
+ * Codecs are identified by their position, so new codecs must only ever be
+ * added to the end of the list.
+ * </p>
+ */
+public class SessionAttributeSerializer implements RedisSerializer<Object> {
+    private static final Log logger = LogFactory.getLog(SessionAttributeSerializer.class);
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+
+    private static final byte NULL = 0;
+
+    private static final byte JDK = 1;
+
+    private static final byte STRING = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte INTEGER = 4;
+
+    private static final byte BOOLEAN = 5;
+
+    private static final int FIRST_CODEC = 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    private final List<AttributeCodec<?>> codecs;
+
+    private final Map<Class<?>, Integer> codecTags = new HashMap<Class<?>, Integer>();
+
+    private final boolean writeCompact;
+
+    /**
+     * Creates a new instance
+     *
+     * @param writeCompact false to keep writing JDK serialization while still
+     * reading the compact format
+     * @param codecs the codecs for additional types
+     */
+    public SessionAttributeSerializer(boolean writeCompact, AttributeCodec<?>... codecs) {
+        Assert.isTrue(codecs.length <= 256 - FIRST_CODEC, "Too many codecs");
+        this.writeCompact = writeCompact;
+        this.codecs = new ArrayList<AttributeCodec<?>>(Arrays.asList(codecs));
+        for(int i = 0; i < codecs.length; i++) {
+            codecTags.put(codecs[i].getType(), FIRST_CODEC + i);
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if(value == null) {
+            return EMPTY;
+        }
+        if(!writeCompact) {
+            return jdk.serialize(value);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            writeValue(value, out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch(IOException e) {
+            throw new SerializationException("Cannot serialize " + value.getClass(), e);
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #serialize(Object)} or with JDK
+     * serialization. If the value cannot be read and its type has an
+     * {@link AttributeCodec}, the codec's
+     * {@link AttributeCodec#createFallback() fallback} is returned instead.
+     */
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if(bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return read(bytes);
+        } catch(SerializationException e) {
+            AttributeCodec<?> codec = findCodec(bytes);
+            Object fallback = codec == null ? null : codec.createFallback();
+            if(fallback == null) {
+                throw e;
+            }
+            logger.warn("Replacing unreadable " + codec.getType().getName() + " with " + fallback, e);
+            return fallback;
+        }
+    }
+
+    private Object read(byte[] bytes) {
+        if(bytes[0] == JDK_STREAM_MAGIC) {
+            return jdk.deserialize(bytes);
+        }
+        if(bytes[0] != FORMAT_VERSION) {
+            throw new SerializationException("Unsupported session attribute format " + bytes[0]);
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            return readValue(in);
+        } catch(IOException e) {
+            throw new SerializationException("Cannot deserialize session attribute", e);
+        }
+    }
+
+    /**
+     * Finds the {@link AttributeCodec} for the type of a stored value from the
+     * tag of the compact format or the name of the outermost class of a JDK
+     * serialization stream.
+     */
+    private AttributeCodec<?> findCodec(byte[] bytes) {
+        if(bytes[0] == FORMAT_VERSION && bytes.length > 1) {
+            int tag = bytes[1] & 0xFF;
+            return tag >= FIRST_CODEC && tag - FIRST_CODEC < codecs.size() ? codecs.get(tag - FIRST_CODEC) : null;
+        }
+        // stream magic and version, TC_OBJECT, TC_CLASSDESC and the class name
+        if(bytes.length < 8 || bytes[4] != 0x73 || bytes[5] != 0x72) {
+            return null;
+        }
+        int length = ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+        if(bytes.length < 8 + length) {
+            return null;
+        }
+        String className = new String(bytes, 8, length, UTF8);
+        for(AttributeCodec<?> codec : codecs) {
+            if(codec.getType().getName().equals(className)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a value of any type, including its type.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void writeValue(Object value, DataOutput out) throws IOException {
+        if(value == null) {
+            out.writeByte(NULL);
+        } else if(value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if(value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if(value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            Integer tag = codecTags.get(value.getClass());
+            if(tag == null) {
+                byte[] serialized = jdk.serialize(value);
+                out.writeByte(JDK);
+                out.writeInt(serialized.length);
+                out.write(serialized);
+            } else {
+                out.writeByte(tag);
+                AttributeCodec codec = codecs.get(tag - FIRST_CODEC);
+                codec.write(value, out, this);
+            }
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue(Object, DataOutput)}.
+     */
+    public Object readValue(DataInput in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch(tag) {
+            case NULL:
+                return null;
+            case JDK:
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                return jdk.deserialize(serialized);
+            case STRING:
+                return readString(in);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case BOOLEAN:
+                return in.readBoolean();
+            default:
+                if(tag < FIRST_CODEC || tag - FIRST_CODEC >= codecs.size()) {
+                    throw new IOException("Unknown session attribute type " + tag);
+                }
+                return codecs.get(tag - FIRST_CODEC).read(in, this);
+        }
+    }
+
+    /**
+     * Writes a String that may be null.
+     */
+    public static void writeString(String value, DataOutput out) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by {@link #writeString(String, DataOutput)}.
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
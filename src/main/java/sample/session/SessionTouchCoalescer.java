@@ -0,0 +1,290 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.session.ExpiringSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+import org.springframework.util.Assert;
+
+/**
+ * Coalesces the "touch" (refresh of the expiration) of a {@link Session} that
+ * is performed for every inbound STOMP frame.
+ *
+ * <p>
+ * Rather than loading and saving the {@link Session} for every frame, the last
+ * refresh time of each session id is remembered and the
+ * {@link SessionRepository} is only written to once per window. The window is
+ * a fraction of the session's max inactive interval, so the session can never
+ * expire while the WebSocket is in use. Touches that are skipped are marked as
+ * pending and written in one pass by {@link #flush()} once their window has
+ * elapsed.
+ * </p>
+ */
+@ManagedResource
+public class SessionTouchCoalescer {
+    private static final Log logger = LogFactory.getLog(SessionTouchCoalescer.class);
+
+    private final ConcurrentMap<String, Touch> touches = new ConcurrentHashMap<String, Touch>();
+
+    private final AtomicLong touchesSkipped = new AtomicLong();
+
+    private final AtomicLong touchesWritten = new AtomicLong();
+
+    private final AtomicLong touchesFailed = new AtomicLong();
+
+    private final SessionRepository<Session> sessionRepository;
+
+    private final double windowFraction;
+
+    /**
+     * Creates a new instance
+     *
+     * @param sessionRepository the {@link SessionRepository} to write touches to
+     * @param windowFraction the fraction (greater than 0 and less than 1) of the
+     * max inactive interval to coalesce touches over
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public SessionTouchCoalescer(SessionRepository sessionRepository, double windowFraction) {
+        Assert.notNull(sessionRepository, "sessionRepository cannot be null");
+        Assert.isTrue(windowFraction > 0 && windowFraction < 1, "windowFraction must be between 0 and 1");
+        this.sessionRepository = sessionRepository;
+        this.windowFraction = windowFraction;
+    }
+
+    /**
+     * Records activity for the given session id, writing it through to the
+     * {@link SessionRepository} only if the window since the last refresh has
+     * elapsed.
+     *
+     * @param sessionId the id of the {@link Session} to touch
+     */
+    public void touch(String sessionId) {
+        long now = System.currentTimeMillis();
+        Touch touch = touches.get(sessionId);
+        if(touch == null) {
+            Touch created = new Touch(now);
+            touch = touches.putIfAbsent(sessionId, created);
+            if(touch == null) {
+                touch = created;
+            }
+        }
+        if(touch.claim(now)) {
+            PendingWrite write = load(sessionId, touch);
+            if(write != null) {
+                save(write, now);
+            }
+        } else {
+            touch.pending = true;
+            touchesSkipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes every pending touch whose window has elapsed and forgets sessions
+     * that have not been refreshed for longer than their max inactive
+     * interval. When the {@link SessionRepository} is a
+     * {@link BatchingSessionRepository} the sessions are saved together. A
+     * session that cannot be written is counted, logged and retried on the
+     * next pass without affecting the others.
+     */
+    @Scheduled(fixedDelayString = "${sample.session.touch-flush-delay:5000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        List<PendingWrite> writes = new ArrayList<PendingWrite>();
+        Iterator<Map.Entry<String, Touch>> entries = touches.entrySet().iterator();
+        while(entries.hasNext()) {
+            Map.Entry<String, Touch> entry = entries.next();
+            Touch touch = entry.getValue();
+            if(touch.isIdle(now)) {
+                entries.remove();
+            } else if(touch.pending && touch.claim(now)) {
+                PendingWrite write = load(entry.getKey(), touch);
+                if(write != null) {
+                    writes.add(write);
+                }
+            }
+        }
+        if(writes.size() > 1 && sessionRepository instanceof BatchingSessionRepository) {
+            saveAll(writes, now);
+        } else {
+            for(PendingWrite write : writes) {
+                save(write, now);
+            }
+        }
+    }
+
+    /**
+     * Loads the {@link Session} to write a touch to, or returns null if it no
+     * longer exists or cannot be loaded.
+     */
+    private PendingWrite load(String sessionId, Touch touch) {
+        touch.pending = false;
+        try {
+            Session session = sessionRepository.getSession(sessionId);
+            if(session == null) {
+                touches.remove(sessionId);
+                return null;
+            }
+            return new PendingWrite(sessionId, touch, session);
+        } catch(RuntimeException e) {
+            failed(sessionId, touch, e);
+            return null;
+        }
+    }
+
+    private void save(PendingWrite write, long now) {
+        try {
+            sessionRepository.save(write.session);
+        } catch(RuntimeException e) {
+            failed(write.sessionId, write.touch, e);
+            return;
+        }
+        written(write, now);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void saveAll(List<PendingWrite> writes, long now) {
+        List<Session> sessions = new ArrayList<Session>(writes.size());
+        for(PendingWrite write : writes) {
+            sessions.add(write.session);
+        }
+        try {
+            ((BatchingSessionRepository<Session>) sessionRepository).saveAll(sessions);
+        } catch(RuntimeException e) {
+            for(PendingWrite write : writes) {
+                failed(write.sessionId, write.touch, e);
+            }
+            return;
+        }
+        for(PendingWrite write : writes) {
+            written(write, now);
+        }
+    }
+
+    private void written(PendingWrite write, long now) {
+        int maxInactiveSeconds = write.session instanceof ExpiringSession ?
+                ((ExpiringSession) write.session).getMaxInactiveIntervalInSeconds() : DEFAULT_MAX_INACTIVE_SECONDS;
+        write.touch.refreshed(now, maxInactiveSeconds * 1000L, windowFraction);
+        touchesWritten.incrementAndGet();
+    }
+
+    private void failed(String sessionId, Touch touch, RuntimeException e) {
+        touch.release();
+        touchesFailed.incrementAndGet();
+        logger.warn("Could not write the touch of session " + sessionId, e);
+    }
+
+    @ManagedAttribute(description = "Number of touches that were coalesced instead of written")
+    public long getTouchesSkipped() {
+        return touchesSkipped.get();
+    }
+
+    @ManagedAttribute(description = "Number of touches written to the SessionRepository")
+    public long getTouchesWritten() {
+        return touchesWritten.get();
+    }
+
+    @ManagedAttribute(description = "Number of touches that could not be written and are retried")
+    public long getTouchesFailed() {
+        return touchesFailed.get();
+    }
+
+    @ManagedAttribute(description = "Number of sessions currently tracked")
+    public int getTrackedSessions() {
+        return touches.size();
+    }
+
+    private static final int DEFAULT_MAX_INACTIVE_SECONDS = 1800;
+
+    /**
+     * The refresh state of a single session id.
+     */
+    private static final class Touch {
+        private final AtomicLong nextRefresh = new AtomicLong();
+
+        private volatile long lastRefresh;
+
+        private volatile long maxInactiveMillis = DEFAULT_MAX_INACTIVE_SECONDS * 1000L;
+
+        private volatile boolean pending;
+
+        Touch(long created) {
+            this.lastRefresh = created;
+        }
+
+        /**
+         * Claims the right to write this touch if the window has elapsed, so that
+         * only one thread writes per window.
+         */
+        boolean claim(long now) {
+            long next = nextRefresh.get();
+            return now >= next && nextRefresh.compareAndSet(next, Long.MAX_VALUE);
+        }
+
+        /**
+         * Gives up a claim after a failed write so the touch is retried.
+         */
+        void release() {
+            this.pending = true;
+            this.nextRefresh.set(0);
+        }
+
+        void refreshed(long now, long maxInactiveMillis, double windowFraction) {
+            this.lastRefresh = now;
+            this.maxInactiveMillis = maxInactiveMillis;
+            this.nextRefresh.set(now + (long) (maxInactiveMillis * windowFraction));
+        }
+
+        /**
+         * Determines if the session was not refreshed for longer than its max
+         * inactive interval, so it has expired or its writes keep failing.
+         */
+        boolean isIdle(long now) {
+            return now - lastRefresh > maxInactiveMillis;
+        }
+    }
+
+    /**
+     * A loaded {@link Session} whose touch is to be written.
+     */
+    private static final class PendingWrite {
+        private final String sessionId;
+
+        private final Touch touch;
+
+        private final Session session;
+
+        private PendingWrite(String sessionId, Touch touch, Session session) {
+            this.sessionId = sessionId;
+            this.touch = touch;
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import sample.data.ActiveWebSocketUser;
+import sample.data.ActiveWebSocketUserRepository;
+
+/**
+ * Optionally records {@link ActiveWebSocketUser} rows as a durable audit of the
+ * {@link PresenceRegistry}. The writes are performed on a single background
+ * thread so that connecting and disconnecting never waits on the database.
+ * Writes are dropped (and counted) if the queue is full.
+ */
+@ManagedResource
+public class ActiveWebSocketUserAudit implements DisposableBean {
+    private final ActiveWebSocketUserRepository repository;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param repository the {@link ActiveWebSocketUserRepository} to write to
+     * or null if auditing is disabled
+     * @param queueCapacity the maximum number of writes waiting to be performed
+     */
+    public ActiveWebSocketUserAudit(ActiveWebSocketUserRepository repository, int queueCapacity) {
+        this.repository = repository;
+        if(repository == null) {
+            this.executor = null;
+            return;
+        }
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(1);
+        this.executor.setMaxPoolSize(1);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("presence-audit-");
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+    }
+
+    public void connected(final String sessionId, final String username) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                repository.save(new ActiveWebSocketUser(sessionId, username, Instant.now()));
+            }
+        });
+    }
+
+    public void disconnected(final String sessionId) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                if(repository.exists(sessionId)) {
+                    repository.delete(sessionId);
+                }
+            }
+        });
+    }
+
+    private void submit(Runnable write) {
+        if(executor == null) {
+            return;
+        }
+        try {
+            executor.execute(write);
+        } catch(RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of audit writes dropped because the queue was full")
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Number of audit writes waiting to be performed")
+    public int getQueueSize() {
+        return executor == null ? 0 : executor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if(executor != null) {
+            executor.setWaitForTasksToCompleteOnShutdown(true);
+            executor.shutdown();
+        }
+    }
+}
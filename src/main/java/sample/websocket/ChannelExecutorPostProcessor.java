@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Applies the rejection policy configured with the property
+ * "sample.websocket.inbound-channel.rejection-policy" or
+ * "sample.websocket.outbound-channel.rejection-policy" to the executor of the
+ * client inbound and outbound channel. The policy is one of "caller-runs" (the
+ * default, which makes the sending thread handle the message and so slows down
+ * the client that sends it), "abort", "discard" or "discard-oldest". Rejected
+ * tasks are counted by a {@link CountingRejectedExecutionHandler}.
+ */
+public class ChannelExecutorPostProcessor implements BeanPostProcessor, EnvironmentAware {
+    public static final String INBOUND_EXECUTOR = "clientInboundChannelExecutor";
+
+    public static final String OUTBOUND_EXECUTOR = "clientOutboundChannelExecutor";
+
+    private Environment env;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.env = environment;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if(!(bean instanceof ThreadPoolTaskExecutor)) {
+            return bean;
+        }
+        String channel;
+        if(INBOUND_EXECUTOR.equals(beanName)) {
+            channel = "inbound";
+        } else if(OUTBOUND_EXECUTOR.equals(beanName)) {
+            channel = "outbound";
+        } else {
+            return bean;
+        }
+        String policy = env.getProperty("sample.websocket." + channel + "-channel.rejection-policy", "caller-runs");
+        ((ThreadPoolTaskExecutor) bean).setRejectedExecutionHandler(new CountingRejectedExecutionHandler(createPolicy(policy)));
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    private static RejectedExecutionHandler createPolicy(String policy) {
+        String name = policy.trim().toLowerCase(Locale.ENGLISH);
+        if("abort".equals(name)) {
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+        if("caller-runs".equals(name)) {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        if("discard".equals(name)) {
+            return new ThreadPoolExecutor.DiscardPolicy();
+        }
+        if("discard-oldest".equals(name)) {
+            return new ThreadPoolExecutor.DiscardOldestPolicy();
+        }
+        throw new IllegalArgumentException("Unknown rejection policy " + policy);
+    }
+
+    /**
+     * Counts the tasks that were rejected before delegating to another
+     * {@link RejectedExecutionHandler}.
+     */
+    public static class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        public CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            rejected.incrementAndGet();
+            delegate.rejectedExecution(task, executor);
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public RejectedExecutionHandler getDelegate() {
+            return delegate;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import sample.websocket.ChannelExecutorPostProcessor.CountingRejectedExecutionHandler;
+
+/**
+ * Records how long the messages of an executor backed channel wait in the
+ * queue and how long the tasks take to handle them, and exposes them along
+ * with the state of the channel's {@link ThreadPoolTaskExecutor} (queue depth,
+ * active threads, rejections). The time a message is sent is stored in the
+ * {@link #ENQUEUED_HEADER} header.
+ */
+@ManagedResource
+public class ChannelMetrics extends ChannelInterceptorAdapter implements ExecutorChannelInterceptor, BeanFactoryAware {
+    public static final String ENQUEUED_HEADER = "sample.enqueued";
+
+    private final ThreadLocal<Long> handleStart = new ThreadLocal<Long>();
+
+    private final String executorBeanName;
+
+    private BeanFactory beanFactory;
+
+    private volatile ThreadPoolTaskExecutor executor;
+
+    private final AtomicLong tasks = new AtomicLong();
+
+    private final AtomicLong failedTasks = new AtomicLong();
+
+    private final AtomicLong totalTaskNanos = new AtomicLong();
+
+    private final AtomicLong maxTaskNanos = new AtomicLong();
+
+    private final AtomicLong queuedTasks = new AtomicLong();
+
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    /**
+     * Creates a new instance
+     *
+     * @param executorBeanName the name of the {@link ThreadPoolTaskExecutor}
+     * bean used by the channel
+     */
+    public ChannelMetrics(String executorBeanName) {
+        this.executorBeanName = executorBeanName;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(ENQUEUED_HEADER, System.nanoTime());
+        if(MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class) == accessor) {
+            return message;
+        }
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        long now = System.nanoTime();
+        Object enqueued = message.getHeaders().get(ENQUEUED_HEADER);
+        if(enqueued instanceof Long) {
+            long nanos = now - (Long) enqueued;
+            queuedTasks.incrementAndGet();
+            totalQueueNanos.addAndGet(nanos);
+            updateMax(maxQueueNanos, nanos);
+        }
+        handleStart.set(now);
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        Long start = handleStart.get();
+        if(start == null) {
+            return;
+        }
+        handleStart.remove();
+        long nanos = System.nanoTime() - start;
+        tasks.incrementAndGet();
+        if(ex != null) {
+            failedTasks.incrementAndGet();
+        }
+        totalTaskNanos.addAndGet(nanos);
+        updateMax(maxTaskNanos, nanos);
+    }
+
+    private static void updateMax(AtomicLong max, long nanos) {
+        long current = max.get();
+        while(nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    @ManagedAttribute(description = "Number of messages handled")
+    public long getTasks() {
+        return tasks.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages whose handler threw an Exception")
+    public long getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    @ManagedAttribute(description = "Average time in microseconds to handle a message")
+    public long getAverageTaskMicros() {
+        long count = tasks.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalTaskNanos.get() / count);
+    }
+
+    @ManagedAttribute(description = "Longest time in microseconds to handle a message")
+    public long getMaxTaskMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxTaskNanos.get());
+    }
+
+    @ManagedAttribute(description = "Average time in microseconds a message waited in the queue for a thread")
+    public long getAverageQueueMicros() {
+        long count = queuedTasks.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalQueueNanos.get() / count);
+    }
+
+    @ManagedAttribute(description = "Longest time in microseconds a message waited in the queue for a thread")
+    public long getMaxQueueMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxQueueNanos.get());
+    }
+
+    @ManagedAttribute(description = "Number of messages waiting for a thread")
+    public int getQueueDepth() {
+        return getThreadPoolExecutor().getQueue().size();
+    }
+
+    @ManagedAttribute(description = "Number of threads handling a message")
+    public int getActiveThreads() {
+        return getThreadPoolExecutor().getActiveCount();
+    }
+
+    @ManagedAttribute(description = "Number of threads in the pool")
+    public int getPoolSize() {
+        return getThreadPoolExecutor().getPoolSize();
+    }
+
+    @ManagedAttribute(description = "Number of messages rejected because the pool and queue were full")
+    public long getRejectedTasks() {
+        RejectedExecutionHandler handler = getThreadPoolExecutor().getRejectedExecutionHandler();
+        return handler instanceof CountingRejectedExecutionHandler ?
+                ((CountingRejectedExecutionHandler) handler).getRejected() : 0;
+    }
+
+    private ThreadPoolExecutor getThreadPoolExecutor() {
+        if(executor == null) {
+            executor = beanFactory.getBean(executorBeanName, ThreadPoolTaskExecutor.class);
+        }
+        return executor.getThreadPoolExecutor();
+    }
+}
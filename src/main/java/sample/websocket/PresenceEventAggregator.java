@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Collects users signing in and out and broadcasts them as one list per topic
+ * on each tick rather than one message per event. A user that signs in and
+ * back out (or out and back in) within the same tick cancels out and is not
+ * broadcast at all.
+ */
+@ManagedResource
+public class PresenceEventAggregator {
+    public static final String SIGNIN_DESTINATION = "/topic/friends/signin";
+
+    public static final String SIGNOUT_DESTINATION = "/topic/friends/signout";
+
+    private final ConcurrentMap<String, Boolean> pendingByUsername = new ConcurrentHashMap<String, Boolean>();
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final AtomicLong eventsReceived = new AtomicLong();
+
+    private final AtomicLong eventsCoalesced = new AtomicLong();
+
+    private final AtomicLong broadcastsSent = new AtomicLong();
+
+    public PresenceEventAggregator(SimpMessageSendingOperations messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    public void signin(String username) {
+        add(username, Boolean.TRUE);
+    }
+
+    public void signout(String username) {
+        add(username, Boolean.FALSE);
+    }
+
+    private void add(String username, final Boolean signin) {
+        eventsReceived.incrementAndGet();
+        pendingByUsername.compute(username, new BiFunction<String, Boolean, Boolean>() {
+            @Override
+            public Boolean apply(String name, Boolean pending) {
+                if(pending == null) {
+                    return signin;
+                }
+                if(pending.equals(signin)) {
+                    eventsCoalesced.incrementAndGet();
+                    return pending;
+                }
+                eventsCoalesced.addAndGet(2);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Broadcasts the events collected since the last tick.
+     */
+    @Scheduled(fixedDelayString = "${sample.websocket.presence-broadcast-delay:250}")
+    public void flush() {
+        List<String> signins = new ArrayList<String>();
+        List<String> signouts = new ArrayList<String>();
+        Iterator<Map.Entry<String, Boolean>> entries = pendingByUsername.entrySet().iterator();
+        while(entries.hasNext()) {
+            Map.Entry<String, Boolean> entry = entries.next();
+            if(pendingByUsername.remove(entry.getKey(), entry.getValue())) {
+                (entry.getValue() ? signins : signouts).add(entry.getKey());
+            }
+        }
+        send(SIGNIN_DESTINATION, signins);
+        send(SIGNOUT_DESTINATION, signouts);
+    }
+
+    private void send(String destination, List<String> usernames) {
+        if(usernames.isEmpty()) {
+            return;
+        }
+        messagingTemplate.convertAndSend(destination, usernames);
+        broadcastsSent.incrementAndGet();
+    }
+
+    @ManagedAttribute(description = "Number of signin and signout events received")
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    @ManagedAttribute(description = "Number of events that were cancelled out or merged instead of broadcast")
+    public long getEventsCoalesced() {
+        return eventsCoalesced.get();
+    }
+
+    @ManagedAttribute(description = "Number of batched broadcasts sent")
+    public long getBroadcastsSent() {
+        return broadcastsSent.get();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks which users are connected over a WebSocket in memory. A user may have
+ * several WebSocket sessions at once (i.e. multiple browser tabs), so the user
+ * is only considered to have signed in when the first session connects and to
+ * have signed out when the last session disconnects.
+ */
+@Component
+@ManagedResource
+public class PresenceRegistry {
+    /**
+     * A user's entry is only changed inside {@code compute} for that user, which
+     * also updates {@link #usernameBySessionId}, so both maps change together
+     * per user without a global lock.
+     */
+    private final ConcurrentMap<String, Set<String>> sessionIdsByUsername = new ConcurrentHashMap<String, Set<String>>();
+
+    private final ConcurrentMap<String, String> usernameBySessionId = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Registers a new WebSocket session for a user.
+     *
+     * @param username the name of the user that connected
+     * @param sessionId the WebSocket session id
+     * @return true if this is the user's only session (the user signed in)
+     */
+    public boolean connect(final String username, final String sessionId) {
+        final AtomicBoolean signedIn = new AtomicBoolean();
+        sessionIdsByUsername.compute(username, new BiFunction<String, Set<String>, Set<String>>() {
+            @Override
+            public Set<String> apply(String name, Set<String> sessionIds) {
+                if(usernameBySessionId.putIfAbsent(sessionId, username) != null) {
+                    return sessionIds;
+                }
+                if(sessionIds == null) {
+                    sessionIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(2));
+                }
+                sessionIds.add(sessionId);
+                signedIn.set(sessionIds.size() == 1);
+                return sessionIds;
+            }
+        });
+        return signedIn.get();
+    }
+
+    /**
+     * Removes a WebSocket session.
+     *
+     * @param sessionId the WebSocket session id
+     * @return the name of the user if this was the user's last session (the user
+     * signed out), else null
+     */
+    public String disconnect(final String sessionId) {
+        final String username = usernameBySessionId.get(sessionId);
+        if(username == null) {
+            return null;
+        }
+        final AtomicBoolean signedOut = new AtomicBoolean();
+        sessionIdsByUsername.computeIfPresent(username, new BiFunction<String, Set<String>, Set<String>>() {
+            @Override
+            public Set<String> apply(String name, Set<String> sessionIds) {
+                if(!usernameBySessionId.remove(sessionId, username)) {
+                    return sessionIds;
+                }
+                sessionIds.remove(sessionId);
+                if(!sessionIds.isEmpty()) {
+                    return sessionIds;
+                }
+                signedOut.set(true);
+                return null;
+            }
+        });
+        return signedOut.get() ? username : null;
+    }
+
+    /**
+     * Determines if the user has at least one WebSocket session.
+     *
+     * @param username the name of the user
+     */
+    public boolean isActive(String username) {
+        return sessionIdsByUsername.containsKey(username);
+    }
+
+    /**
+     * Gets the names of the users that are connected.
+     *
+     * @param excludeUsername the name of a user to leave out (i.e. the current
+     * user). Can be null.
+     */
+    public List<String> getActiveUsers(String excludeUsername) {
+        List<String> result = new ArrayList<String>(sessionIdsByUsername.keySet());
+        if(excludeUsername != null) {
+            result.remove(excludeUsername);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @ManagedAttribute(description = "Number of users with at least one WebSocket session")
+    public int getActiveUserCount() {
+        return sessionIdsByUsername.size();
+    }
+
+    @ManagedAttribute(description = "Number of WebSocket sessions")
+    public int getSessionCount() {
+        return usernameBySessionId.size();
+    }
+}
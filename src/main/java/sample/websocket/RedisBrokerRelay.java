@@ -0,0 +1,236 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package sample.websocket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptorAdapter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
+
+/**
+ * Relays messages sent to the broker channel across every node of the
+ * application using Redis publish/subscribe, so that
+ * {@code convertAndSendToUser} reaches a user connected to another node and
+ * {@code /topic/} broadcasts reach every node.
+ *
+ * <p>
+ * Delivery is local first. A message for a user that is connected to this
+ * node is only delivered by the local broker and never published to Redis.
+ * This assumes a user's WebSocket sessions are routed to a single node, which
+ * the SockJS HTTP transports already require of the load balancer. Messages to
+ * a {@code /topic/} are delivered locally and published for the other nodes.
+ * </p>
+ */
+@ManagedResource
+public class RedisBrokerRelay extends ChannelInterceptorAdapter implements MessageListener, BeanFactoryAware {
+    public static final String CHANNEL = "sample:broker:messages";
+
+    private static final String RELAYED_FROM_HEADER = "relayedFrom";
+
+    private static final String USER_PREFIX = "/user/";
+
+    private static final String TOPIC_PREFIX = "/topic/";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Log logger = LogFactory.getLog(RedisBrokerRelay.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final byte[] rawChannel;
+
+    private final RedisOperations<String, ?> redisOperations;
+
+    private final PresenceRegistry presenceRegistry;
+
+    private BeanFactory beanFactory;
+
+    private volatile MessageChannel brokerChannel;
+
+    private final AtomicLong deliveredLocally = new AtomicLong();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicLong received = new AtomicLong();
+
+    public RedisBrokerRelay(RedisOperations<String, ?> redisOperations, PresenceRegistry presenceRegistry) {
+        this.redisOperations = redisOperations;
+        this.presenceRegistry = presenceRegistry;
+        this.rawChannel = CHANNEL.getBytes(UTF8);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Publishes messages sent to the broker channel that may need to be
+     * delivered by another node.
+     */
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if(headers.containsKey(RELAYED_FROM_HEADER)) {
+            return message;
+        }
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if((type != null && type != SimpMessageType.MESSAGE) || destination == null) {
+            return message;
+        }
+        if(destination.startsWith(USER_PREFIX)) {
+            if(presenceRegistry.isActive(getUsername(destination))) {
+                deliveredLocally.incrementAndGet();
+            } else {
+                publish(message, destination);
+            }
+        } else if(destination.startsWith(TOPIC_PREFIX)) {
+            publish(message, destination);
+        }
+        return message;
+    }
+
+    private void publish(Message<?> message, String destination) {
+        if(!(message.getPayload() instanceof byte[])) {
+            logger.debug("Not relaying non byte[] payload sent to " + destination);
+            return;
+        }
+        final byte[] body;
+        try {
+            body = encode(destination, message);
+        } catch(IOException e) {
+            throw new IllegalStateException("Could not encode message to " + destination, e);
+        }
+        redisOperations.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) {
+                connection.publish(rawChannel, body);
+                return null;
+            }
+        });
+        published.incrementAndGet();
+    }
+
+    /**
+     * Delivers a message published by another node to the local broker.
+     */
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message redisMessage, byte[] pattern) {
+        Message<byte[]> message;
+        try {
+            message = decode(redisMessage.getBody());
+        } catch(IOException e) {
+            logger.error("Could not decode relayed message", e);
+            return;
+        }
+        if(message == null) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if(destination.startsWith(USER_PREFIX) && !presenceRegistry.isActive(getUsername(destination))) {
+            return;
+        }
+        received.incrementAndGet();
+        getBrokerChannel().send(message);
+    }
+
+    private byte[] encode(String destination, Message<?> message) throws IOException {
+        byte[] payload = (byte[]) message.getPayload();
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(nodeId);
+        out.writeUTF(destination);
+        out.writeUTF(contentType == null ? "" : contentType.toString());
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Message<byte[]> decode(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        String fromNodeId = in.readUTF();
+        if(nodeId.equals(fromNodeId)) {
+            return null;
+        }
+        String destination = in.readUTF();
+        String contentType = in.readUTF();
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if(StringUtils.hasLength(contentType)) {
+            accessor.setContentType(MimeType.valueOf(contentType));
+        }
+        accessor.setHeader(RELAYED_FROM_HEADER, fromNodeId);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private MessageChannel getBrokerChannel() {
+        if(brokerChannel == null) {
+            brokerChannel = beanFactory.getBean("brokerChannel", MessageChannel.class);
+        }
+        return brokerChannel;
+    }
+
+    private static String getUsername(String userDestination) {
+        int end = userDestination.indexOf('/', USER_PREFIX.length());
+        String username = end < 0 ? userDestination.substring(USER_PREFIX.length()) : userDestination.substring(USER_PREFIX.length(), end);
+        return StringUtils.replace(username, "%2F", "/");
+    }
+
+    @ManagedAttribute(description = "Number of user messages delivered without publishing to Redis")
+    public long getDeliveredLocally() {
+        return deliveredLocally.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages published to Redis")
+    public long getPublished() {
+        return published.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages from other nodes delivered by this node")
+    public long getReceived() {
+        return received.get();
+    }
+}
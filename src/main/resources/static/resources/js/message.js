@@ -107,6 +107,13 @@ function ImConversationModel(stompClient,from) {
     self.to(to);
     self.draft('');
     self.messages.removeAll()
+    var history = stompClient.subscribe("/app/im/history/" + to.username, function(message) {
+      history.unsubscribe();
+      var messages = JSON.parse(message.body);
+      for(var i=messages.length - 1;i>=0;i--) {
+        self.messages.unshift(new ImModel(messages[i]));
+      }
+    });
     $('#trade-dialog').modal();
   }
   
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import sample.data.User;
+import sample.data.UserRepository;
+import sample.security.AdaptiveBCryptPasswordEncoder;
+import sample.security.BoundedUserCache;
+import sample.security.PasswordHashingExecutor;
+import sample.security.RehashingAuthenticationProvider;
+
+public class AdaptiveBCryptPasswordEncoderTests {
+    AdaptiveBCryptPasswordEncoder weak = new AdaptiveBCryptPasswordEncoder(4);
+
+    AdaptiveBCryptPasswordEncoder strong = new AdaptiveBCryptPasswordEncoder(5);
+
+    PasswordHashingExecutor passwordHashingExecutor = new PasswordHashingExecutor(1, 1, 1, 10000);
+
+    @After
+    public void cleanup() {
+        passwordHashingExecutor.destroy();
+    }
+
+    @Test
+    public void hashesOfAnyStrengthMatch() {
+        String encoded = weak.encode("password");
+
+        assertTrue(strong.matches("password", encoded));
+        assertFalse(strong.matches("wrong", encoded));
+        assertFalse(strong.matches("password", "password"));
+    }
+
+    @Test
+    public void upgradeEncodingWhenStrengthIsLower() {
+        assertTrue(strong.upgradeEncoding(weak.encode("password")));
+        assertFalse(strong.upgradeEncoding(strong.encode("password")));
+        assertFalse(weak.upgradeEncoding(strong.encode("password")));
+        assertTrue(strong.upgradeEncoding("password"));
+    }
+
+    @Test
+    public void calibrateStaysWithinBounds() {
+        assertEquals(4, AdaptiveBCryptPasswordEncoder.calibrate(0, 4, 6).getStrength());
+        assertEquals(6, AdaptiveBCryptPasswordEncoder.calibrate(Long.MAX_VALUE, 4, 6).getStrength());
+    }
+
+    @Test
+    public void hashMillisIsEstimatedOnlyByCalibration() {
+        assertTrue(AdaptiveBCryptPasswordEncoder.calibrate(0, 4, 6).getHashMillis() >= 0);
+        assertEquals(-1, strong.getHashMillis());
+    }
+
+    @Test
+    public void loginRehashesWeakerHash() {
+        User user = new User();
+        user.setEmail("rob@example.com");
+        user.setPassword(weak.encode("password"));
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+        UserCache userCache = mock(UserCache.class);
+
+        authenticate(userRepository, userCache, new User(user));
+
+        assertFalse(strong.upgradeEncoding(user.getPassword()));
+        assertTrue(strong.matches("password", user.getPassword()));
+        verify(userRepository).save(user);
+        verify(userCache).removeUserFromCache(user.getEmail());
+        assertEquals(1, passwordHashingExecutor.getHashes());
+    }
+
+    @Test
+    public void loginKeepsCurrentHash() {
+        User user = new User();
+        user.setEmail("rob@example.com");
+        user.setPassword(strong.encode("password"));
+        UserRepository userRepository = mock(UserRepository.class);
+
+        authenticate(userRepository, mock(UserCache.class), user);
+
+        verify(userRepository, never()).save(any(User.class));
+    }
+
+    @Test
+    public void changedPasswordIsAcceptedWhileOldUserIsCached() {
+        User user = new User();
+        user.setEmail("rob@example.com");
+        user.setPassword(strong.encode("password"));
+        BoundedUserCache userCache = new BoundedUserCache(10, 300);
+        userCache.putUserInCache(new org.springframework.security.core.userdetails.User(user.getEmail(),
+                strong.encode("old"), AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+        authenticate(mock(UserRepository.class), userCache, user);
+
+        assertTrue(strong.matches("password", userCache.getUserFromCache(user.getEmail()).getPassword()));
+    }
+
+    private void authenticate(UserRepository userRepository, UserCache userCache, User user) {
+        UserDetailsService userDetailsService = mock(UserDetailsService.class);
+        when(userDetailsService.loadUserByUsername(user.getEmail())).thenReturn(
+                new org.springframework.security.core.userdetails.User(user.getEmail(), user.getPassword(),
+                        AuthorityUtils.createAuthorityList("ROLE_USER")));
+        RehashingAuthenticationProvider provider = new RehashingAuthenticationProvider(userRepository, strong, passwordHashingExecutor);
+        provider.setUserDetailsService(userDetailsService);
+        provider.setUserCache(userCache);
+
+        provider.authenticate(new UsernamePasswordAuthenticationToken(user.getEmail(), "password"));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import sample.security.BoundedUserCache;
+
+public class BoundedUserCacheTests {
+
+    @Test
+    public void leastRecentlyUsedUserIsEvicted() {
+        BoundedUserCache cache = new BoundedUserCache(2, 300);
+        UserDetails rob = user("rob@example.com");
+        UserDetails luke = user("luke@example.com");
+        cache.putUserInCache(rob);
+        cache.putUserInCache(luke);
+        cache.getUserFromCache(rob.getUsername());
+
+        cache.putUserInCache(user("eve@example.com"));
+
+        assertSame(rob, cache.getUserFromCache(rob.getUsername()));
+        assertNull(cache.getUserFromCache(luke.getUsername()));
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void expiredUserIsEvicted() throws Exception {
+        BoundedUserCache cache = new BoundedUserCache(2, 1);
+        UserDetails rob = user("rob@example.com");
+        cache.putUserInCache(rob);
+        assertSame(rob, cache.getUserFromCache(rob.getUsername()));
+
+        Thread.sleep(1100);
+
+        assertNull(cache.getUserFromCache(rob.getUsername()));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void removedUserIsMissed() {
+        BoundedUserCache cache = new BoundedUserCache(2, 300);
+        UserDetails rob = user("rob@example.com");
+        cache.putUserInCache(rob);
+
+        cache.removeUserFromCache(rob.getUsername());
+
+        assertNull(cache.getUserFromCache(rob.getUsername()));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    private static UserDetails user(String username) {
+        return new User(username, "password", AuthorityUtils.createAuthorityList("ROLE_USER"));
+    }
+}
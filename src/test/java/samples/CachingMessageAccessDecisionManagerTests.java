@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import sample.security.CachingMessageAccessDecisionManager;
+import sample.security.MessageAuthorizationCache;
+
+public class CachingMessageAccessDecisionManagerTests {
+    Authentication authentication = new TestingAuthenticationToken("rob", "password", "ROLE_USER");
+
+    Collection<ConfigAttribute> attributes = Collections.emptyList();
+
+    AccessDecisionManager delegate;
+
+    MessageAuthorizationCache cache;
+
+    CachingMessageAccessDecisionManager manager;
+
+    @Before
+    public void setup() {
+        delegate = mock(AccessDecisionManager.class);
+        cache = new MessageAuthorizationCache(10);
+        manager = new CachingMessageAccessDecisionManager(delegate, cache);
+    }
+
+    @Test
+    public void grantedDecisionIsReused() {
+        for(int i=0;i<100;i++) {
+            manager.decide(authentication, message("1", "/app/im"), attributes);
+        }
+
+        verify(delegate, times(1)).decide(any(Authentication.class), any(), anyCollectionOf(ConfigAttribute.class));
+        assertEquals(99, cache.getHits());
+    }
+
+    @Test
+    public void deniedDecisionIsReused() {
+        Message<?> message = message("1", "/topic/friends/signin");
+        doThrow(new AccessDeniedException("denied")).when(delegate).decide(authentication, message, attributes);
+
+        for(int i=0;i<2;i++) {
+            try {
+                manager.decide(authentication, message, attributes);
+            } catch(AccessDeniedException expected) {}
+        }
+
+        verify(delegate, times(1)).decide(authentication, message, attributes);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void disconnectDiscardsDecisions() {
+        manager.decide(authentication, message("1", "/app/im"), attributes);
+
+        cache.onApplicationEvent(new SessionDisconnectEvent(this, "1", CloseStatus.NORMAL));
+        manager.decide(authentication, message("1", "/app/im"), attributes);
+
+        verify(delegate, times(2)).decide(any(Authentication.class), any(), anyCollectionOf(ConfigAttribute.class));
+        assertEquals(0, cache.getHits());
+    }
+
+    private static Message<byte[]> message(String sessionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+}
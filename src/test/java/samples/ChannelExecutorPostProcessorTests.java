@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import sample.websocket.ChannelExecutorPostProcessor;
+import sample.websocket.ChannelExecutorPostProcessor.CountingRejectedExecutionHandler;
+
+public class ChannelExecutorPostProcessorTests {
+    MockEnvironment env;
+
+    ChannelExecutorPostProcessor postProcessor;
+
+    @Before
+    public void setup() {
+        env = new MockEnvironment();
+        postProcessor = new ChannelExecutorPostProcessor();
+        postProcessor.setEnvironment(env);
+    }
+
+    @Test
+    public void callerRunsIsTheDefault() {
+        assertTrue(policy(ChannelExecutorPostProcessor.INBOUND_EXECUTOR) instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        assertTrue(policy(ChannelExecutorPostProcessor.OUTBOUND_EXECUTOR) instanceof ThreadPoolExecutor.CallerRunsPolicy);
+    }
+
+    @Test
+    public void policiesAreMappedByName() {
+        env.setProperty("sample.websocket.inbound-channel.rejection-policy", "abort");
+        env.setProperty("sample.websocket.outbound-channel.rejection-policy", " Discard-Oldest ");
+
+        assertTrue(policy(ChannelExecutorPostProcessor.INBOUND_EXECUTOR) instanceof ThreadPoolExecutor.AbortPolicy);
+        assertTrue(policy(ChannelExecutorPostProcessor.OUTBOUND_EXECUTOR) instanceof ThreadPoolExecutor.DiscardOldestPolicy);
+
+        env.setProperty("sample.websocket.inbound-channel.rejection-policy", "discard");
+
+        assertTrue(policy(ChannelExecutorPostProcessor.INBOUND_EXECUTOR) instanceof ThreadPoolExecutor.DiscardPolicy);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownPolicyFails() {
+        env.setProperty("sample.websocket.inbound-channel.rejection-policy", "block");
+
+        policy(ChannelExecutorPostProcessor.INBOUND_EXECUTOR);
+    }
+
+    @Test
+    public void otherExecutorsAreUnchanged() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        RejectedExecutionHandler handler = new ThreadPoolExecutor.AbortPolicy();
+        executor.setRejectedExecutionHandler(handler);
+
+        postProcessor.postProcessBeforeInitialization(executor, "brokerChannelExecutor");
+        executor.initialize();
+
+        assertSame(handler, executor.getThreadPoolExecutor().getRejectedExecutionHandler());
+        executor.shutdown();
+    }
+
+    private RejectedExecutionHandler policy(String beanName) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        postProcessor.postProcessBeforeInitialization(executor, beanName);
+        executor.initialize();
+        try {
+            RejectedExecutionHandler handler = executor.getThreadPoolExecutor().getRejectedExecutionHandler();
+            return ((CountingRejectedExecutionHandler) handler).getDelegate();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
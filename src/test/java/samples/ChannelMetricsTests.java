@@ -0,0 +1,87 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import sample.websocket.ChannelMetrics;
+
+public class ChannelMetricsTests {
+    ThreadPoolTaskExecutor executor;
+
+    ExecutorSubscribableChannel channel;
+
+    ChannelMetrics metrics;
+
+    @Before
+    public void setup() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.initialize();
+        metrics = new ChannelMetrics("executor");
+        channel = new ExecutorSubscribableChannel(executor);
+        channel.addInterceptor(metrics);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void queueWaitIsRecorded() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch handled = new CountDownLatch(2);
+        channel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.countDown();
+            }
+        });
+
+        channel.send(MessageBuilder.withPayload("first").build());
+        channel.send(MessageBuilder.withPayload("second").build());
+        Thread.sleep(100);
+        release.countDown();
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS));
+        while(metrics.getTasks() < 2) {
+            Thread.sleep(10);
+        }
+        assertTrue(metrics.getMaxQueueMicros() + " us", metrics.getMaxQueueMicros() >= TimeUnit.MILLISECONDS.toMicros(90));
+        assertEquals(2, metrics.getTasks());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import sample.data.InstantMessage;
+import sample.data.InstantMessageWriter;
+
+public class InstantMessageWriterTests {
+    EmbeddedDatabase database;
+
+    JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setup() {
+        database = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .setName("InstantMessageWriterTests")
+            .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("create table instant_message(id bigint auto_increment primary key, "
+                + "to_email varchar(255), from_email varchar(255), conversation_key varchar(511), message varchar(255), created timestamp)");
+    }
+
+    @After
+    public void cleanup() {
+        database.shutdown();
+    }
+
+    @Test
+    public void destroyWritesBufferedMessagesInBatches() throws Exception {
+        InstantMessageWriter writer = new InstantMessageWriter(jdbcTemplate, 1000, 100, 50);
+        for(int i=0;i<250;i++) {
+            assertTrue(writer.write(im("rob@example.com", "luke@example.com", "message " + i)));
+        }
+
+        writer.destroy();
+
+        assertEquals(250, jdbcTemplate.queryForObject("select count(*) from instant_message", Integer.class).intValue());
+        assertEquals(250, writer.getWritten());
+        assertTrue(writer.getMaxBatchSize() <= 100);
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void failedBatchIsWrittenOneAtATime() throws Exception {
+        InstantMessageWriter writer = new InstantMessageWriter(jdbcTemplate, 1000, 100, 50);
+        for(int i=0;i<10;i++) {
+            writer.write(im("rob@example.com", "luke@example.com", i == 5 ? new String(new char[300]).replace('\0', 'x') : "message " + i));
+        }
+
+        writer.destroy();
+
+        assertEquals(9, jdbcTemplate.queryForObject("select count(*) from instant_message", Integer.class).intValue());
+        assertEquals(9, writer.getWritten());
+        assertEquals(1, writer.getFailed());
+    }
+
+    @Test
+    public void writeAfterDestroyIsDropped() throws Exception {
+        InstantMessageWriter writer = new InstantMessageWriter(jdbcTemplate, 1000, 100, 50);
+        writer.destroy();
+
+        assertFalse(writer.write(im("rob@example.com", "luke@example.com", "too late")));
+        assertEquals(1, writer.getDropped());
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    private static InstantMessage im(String from, String to, String message) {
+        InstantMessage im = new InstantMessage();
+        im.setFrom(from);
+        im.setTo(to);
+        im.setMessage(message);
+        return im;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+import sample.session.InstrumentedJedisConnectionFactory;
+
+public class InstrumentedJedisConnectionFactoryTests {
+    RedisServer redisServer;
+
+    InstrumentedJedisConnectionFactory factory;
+
+    @Before
+    public void setup() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(1);
+        poolConfig.setMaxWaitMillis(50);
+        poolConfig.setJmxEnabled(false);
+        factory = new InstrumentedJedisConnectionFactory(poolConfig);
+        factory.setPort(port);
+        factory.afterPropertiesSet();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        factory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void borrowsAreTimedAndExhaustionCounted() {
+        RedisConnection connection = factory.getConnection();
+        try {
+            factory.getConnection();
+            fail("Expected the pool to be exhausted");
+        } catch(RedisConnectionFailureException expected) {
+        } finally {
+            connection.close();
+        }
+        factory.getConnection().close();
+
+        assertEquals(2, factory.getConnectionsBorrowed());
+        assertEquals(1, factory.getPoolExhausted());
+        assertEquals(0, factory.getBorrowFailures());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.response.SecurityMockMvcResultMatchers.unauthenticated;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.EnvironmentTestUtils;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import sample.Application;
+import sample.security.PasswordHashingExecutor;
+
+/**
+ * Drives a login through a {@link PasswordHashingExecutor} with one thread and
+ * no queue while its thread is busy.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = Application.class, initializers = LoginThrottlingTests.Initializer.class)
+@WebAppConfiguration
+public class LoginThrottlingTests {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    private MockMvc mvc;
+
+    private ExecutorService caller = Executors.newSingleThreadExecutor();
+
+    private CountDownLatch hashing = new CountDownLatch(1);
+
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setup() {
+        mvc = MockMvcBuilders
+                .webAppContextSetup(context)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        release.countDown();
+        caller.shutdown();
+        caller.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void loginIsRejectedWithRetryAfterWhenHashingIsSaturated() throws Exception {
+        occupyHashingThread();
+
+        mvc
+            .perform(formLogin().user("rob@example.com"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "7"))
+            .andExpect(unauthenticated());
+    }
+
+    public static class Initializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            EnvironmentTestUtils.addEnvironment(context,
+                    "sample.security.login-hashing.threads=1",
+                    "sample.security.login-hashing.queue-capacity=0",
+                    "sample.security.login-hashing.retry-after=7");
+        }
+    }
+
+    private void occupyHashingThread() throws InterruptedException {
+        final PasswordEncoder blocking = new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                hashing.countDown();
+                try {
+                    release.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }
+        };
+        caller.execute(new Runnable() {
+            @Override
+            public void run() {
+                passwordHashingExecutor.matches(blocking, "password", "password");
+            }
+        });
+        assertTrue(hashing.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import sample.data.InstantMessageRepository;
+import sample.data.InstantMessageWriter;
+import sample.data.Message;
+import sample.data.MessageRepository;
+import sample.data.UserRepository;
+import sample.mvc.MessageController;
+import sample.websocket.PresenceRegistry;
+
+public class MessageControllerTests {
+    MessageRepository messageRepository;
+
+    PermissionEvaluator permissionEvaluator;
+
+    Authentication authentication;
+
+    MessageController controller;
+
+    @Before
+    public void setup() {
+        messageRepository = mock(MessageRepository.class);
+        permissionEvaluator = mock(PermissionEvaluator.class);
+        authentication = new TestingAuthenticationToken("luke@example.com", "password", "ROLE_USER");
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        controller = new MessageController(new PresenceRegistry(), mock(SimpMessageSendingOperations.class),
+                messageRepository, mock(UserRepository.class), mock(InstantMessageWriter.class),
+                mock(InstantMessageRepository.class), permissionEvaluator);
+    }
+
+    @After
+    public void cleanup() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void recipientIsServedWithoutPermissionEvaluator() {
+        Message message = new Message();
+        when(messageRepository.findOneToCurrentUser(100L)).thenReturn(message);
+
+        assertSame(message, controller.view(100L).getModel().get("message"));
+        verify(permissionEvaluator, never()).hasPermission(authentication, 100L, Message.class.getName(), "read");
+    }
+
+    @Test
+    public void nonRecipientIsServedWhenPermissionEvaluatorGrantsRead() {
+        Message message = new Message();
+        when(permissionEvaluator.hasPermission(authentication, 100L, Message.class.getName(), "read")).thenReturn(true);
+        when(messageRepository.findOne(100L)).thenReturn(message);
+
+        assertSame(message, controller.view(100L).getModel().get("message"));
+    }
+
+    @Test(expected = AccessDeniedException.class)
+    public void nonRecipientIsDeniedWhenPermissionEvaluatorDenies() {
+        when(messageRepository.findOne(100L)).thenReturn(new Message());
+
+        controller.view(100L);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import sample.security.LoginThrottledException;
+import sample.security.LoginThrottledFailureHandler;
+import sample.security.PasswordHashingExecutor;
+
+public class PasswordHashingExecutorTests {
+    CountDownLatch started = new CountDownLatch(1);
+
+    CountDownLatch release = new CountDownLatch(1);
+
+    PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 1, 7, 10000);
+
+    @After
+    public void cleanup() {
+        release.countDown();
+        executor.destroy();
+    }
+
+    @Test
+    public void matchesDelegates() {
+        assertTrue(executor.decorate(new EqualsPasswordEncoder()).matches("password", "password"));
+        assertEquals(1, executor.getHashes());
+    }
+
+    @Test
+    public void saturatedPoolFailsFast() throws Exception {
+        final PasswordEncoder blocking = executor.decorate(new BlockingPasswordEncoder());
+        for(int i=0;i<2;i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    blocking.matches("password", "password");
+                }
+            }.start();
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        while(executor.getQueueDepth() == 0) {
+            Thread.sleep(10);
+        }
+
+        try {
+            blocking.matches("password", "password");
+            fail("Expected LoginThrottledException");
+        } catch(LoginThrottledException expected) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            new LoginThrottledFailureHandler("/login?error").onAuthenticationFailure(new MockHttpServletRequest(), response, expected);
+            assertEquals(503, response.getStatus());
+            assertEquals("7", response.getHeader("Retry-After"));
+        }
+        assertEquals(1, executor.getRejected());
+    }
+
+    @Test
+    public void slowHashTimesOut() {
+        PasswordHashingExecutor impatient = new PasswordHashingExecutor(1, 1, 7, 100);
+        try {
+            impatient.decorate(new BlockingPasswordEncoder()).matches("password", "password");
+            fail("Expected LoginThrottledException");
+        } catch(LoginThrottledException expected) {
+            assertEquals(7, expected.getRetryAfterSeconds());
+        } finally {
+            impatient.destroy();
+        }
+        assertEquals(1, impatient.getTimedOut());
+    }
+
+    @Test
+    public void encodeDelegates() {
+        assertEquals("password", executor.decorate(new EqualsPasswordEncoder()).encode("password"));
+        assertEquals(1, executor.getHashes());
+    }
+
+    static class EqualsPasswordEncoder implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+
+    class BlockingPasswordEncoder extends EqualsPasswordEncoder {
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            started.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.matches(rawPassword, encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.session.ExpiringSession;
+import org.springframework.session.data.redis.RedisOperationsSessionRepository;
+
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+import sample.session.PipelinedSessionRepository;
+import sample.session.SessionAttributeSerializer;
+
+public class PipelinedSessionRepositoryTests {
+    RedisServer redisServer;
+
+    JedisConnectionFactory connectionFactory;
+
+    Jedis jedis;
+
+    PipelinedSessionRepository repository;
+
+    @Before
+    public void setup() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        jedis = new Jedis("localhost", port);
+
+        connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setPort(port);
+        connectionFactory.afterPropertiesSet();
+        SessionAttributeSerializer serializer = new SessionAttributeSerializer(true);
+        RedisTemplate<String, ExpiringSession> template = new RedisTemplate<String, ExpiringSession>();
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(serializer);
+        template.setHashValueSerializer(serializer);
+        template.setConnectionFactory(connectionFactory);
+        template.afterPropertiesSet();
+
+        repository = new PipelinedSessionRepository(new RedisOperationsSessionRepository(template), template);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        jedis.close();
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    public void readOnlySaveWritesOnlyLastAccessedTimeAndExpiry() {
+        char[] value = new char[2000];
+        Arrays.fill(value, 'x');
+        ExpiringSession session = repository.createSession();
+        session.setAttribute("large", new String(value));
+        repository.save(session);
+
+        ExpiringSession loaded = repository.getSession(session.getId());
+        jedis.configResetStat();
+        long bytesBefore = stat("total_net_input_bytes");
+        repository.save(loaded);
+        long bytesWritten = stat("total_net_input_bytes") - bytesBefore;
+        long commands = calls("hmset") + calls("sadd") + calls("srem") + calls("pexpire") + calls("expire");
+
+        assertEquals(1, calls("hmset"));
+        assertEquals(0, calls("hset"));
+        // the hash write, moving the session between expiration sets and the two expires
+        assertTrue(commands + " commands", commands <= 5);
+        assertTrue(bytesWritten + " bytes written", bytesWritten < value.length / 2);
+        assertEquals(new String(value), repository.getSession(session.getId()).getAttribute("large"));
+    }
+
+    @Test
+    public void saveAllWritesEverySession() {
+        ExpiringSession first = repository.createSession();
+        ExpiringSession second = repository.createSession();
+        first.setAttribute("name", "first");
+        second.setAttribute("name", "second");
+        jedis.configResetStat();
+
+        repository.saveAll(Arrays.asList(first, second));
+
+        assertEquals(2, calls("hmset"));
+        assertEquals(2, repository.getBatchedSaves());
+        assertEquals("first", repository.getSession(first.getId()).getAttribute("name"));
+        assertEquals("second", repository.getSession(second.getId()).getAttribute("name"));
+    }
+
+    private long calls(String command) {
+        String info = jedis.info("commandstats");
+        int start = info.indexOf("cmdstat_" + command + ":calls=");
+        if(start < 0) {
+            return 0;
+        }
+        start = info.indexOf('=', start) + 1;
+        return Long.parseLong(info.substring(start, info.indexOf(',', start)));
+    }
+
+    private long stat(String name) {
+        String info = jedis.info("stats");
+        int start = info.indexOf(name + ":") + name.length() + 1;
+        int end = info.indexOf('\r', start);
+        return Long.parseLong(info.substring(start, end));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import sample.websocket.PresenceEventAggregator;
+
+public class PresenceEventAggregatorTests {
+    SimpMessageSendingOperations messagingTemplate;
+
+    PresenceEventAggregator aggregator;
+
+    @Before
+    public void setup() {
+        messagingTemplate = mock(SimpMessageSendingOperations.class);
+        aggregator = new PresenceEventAggregator(messagingTemplate);
+    }
+
+    @Test
+    public void eventsWithinTickAreBroadcastOncePerTopic() {
+        aggregator.signin("rob@example.com");
+        aggregator.signin("luke@example.com");
+        aggregator.signout("eve@example.com");
+
+        aggregator.flush();
+
+        assertEquals(new HashSet<String>(Arrays.asList("rob@example.com", "luke@example.com")),
+                new HashSet<String>(sent(PresenceEventAggregator.SIGNIN_DESTINATION)));
+        assertEquals(Collections.singletonList("eve@example.com"), sent(PresenceEventAggregator.SIGNOUT_DESTINATION));
+        assertEquals(2, aggregator.getBroadcastsSent());
+        assertEquals(3, aggregator.getEventsReceived());
+        assertEquals(0, aggregator.getEventsCoalesced());
+    }
+
+    @Test
+    public void signinAndSignoutWithinTickCancelOut() {
+        aggregator.signin("rob@example.com");
+        aggregator.signout("rob@example.com");
+        aggregator.signout("luke@example.com");
+        aggregator.signin("luke@example.com");
+
+        aggregator.flush();
+
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+        assertEquals(0, aggregator.getBroadcastsSent());
+        assertEquals(4, aggregator.getEventsCoalesced());
+    }
+
+    @Test
+    public void repeatedEventWithinTickIsMerged() {
+        aggregator.signin("rob@example.com");
+        aggregator.signin("rob@example.com");
+
+        aggregator.flush();
+
+        assertEquals(Collections.singletonList("rob@example.com"), sent(PresenceEventAggregator.SIGNIN_DESTINATION));
+        assertEquals(1, aggregator.getEventsCoalesced());
+    }
+
+    @Test
+    public void eventsOfLaterTickAreBroadcastSeparately() {
+        aggregator.signin("rob@example.com");
+        aggregator.flush();
+        aggregator.signout("rob@example.com");
+
+        aggregator.flush();
+        aggregator.flush();
+
+        assertEquals(Collections.singletonList("rob@example.com"), sent(PresenceEventAggregator.SIGNIN_DESTINATION));
+        assertEquals(Collections.singletonList("rob@example.com"), sent(PresenceEventAggregator.SIGNOUT_DESTINATION));
+        assertEquals(2, aggregator.getBroadcastsSent());
+    }
+
+    @Test
+    public void flushRunsEvery250MillisByDefault() throws Exception {
+        Scheduled scheduled = AnnotationUtils.findAnnotation(PresenceEventAggregator.class.getMethod("flush"), Scheduled.class);
+
+        assertEquals("${sample.websocket.presence-broadcast-delay:250}", scheduled.fixedDelayString());
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private List<String> sent(String destination) {
+        ArgumentCaptor<List> usernames = ArgumentCaptor.forClass(List.class);
+        verify(messagingTemplate).convertAndSend(eq(destination), usernames.capture());
+        return usernames.getValue();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sample.websocket.PresenceRegistry;
+
+public class PresenceRegistryTests {
+    PresenceRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new PresenceRegistry();
+    }
+
+    @Test
+    public void multipleTabsSignInAndOutOnce() {
+        assertTrue(registry.connect("rob@example.com", "1"));
+        assertFalse(registry.connect("rob@example.com", "2"));
+
+        assertNull(registry.disconnect("1"));
+        assertTrue(registry.isActive("rob@example.com"));
+        assertEquals("rob@example.com", registry.disconnect("2"));
+        assertFalse(registry.isActive("rob@example.com"));
+    }
+
+    @Test
+    public void duplicateDisconnectIgnored() {
+        registry.connect("rob@example.com", "1");
+
+        assertEquals("rob@example.com", registry.disconnect("1"));
+        assertNull(registry.disconnect("1"));
+    }
+
+    @Test
+    public void activeUsersExcludesCurrentUser() {
+        registry.connect("rob@example.com", "1");
+        registry.connect("luke@example.com", "2");
+
+        assertEquals(Arrays.asList("luke@example.com"), registry.getActiveUsers("rob@example.com"));
+        assertEquals(2, registry.getActiveUsers(null).size());
+    }
+
+    @Test
+    public void concurrentTabsLeaveNoPhantomUser() throws Exception {
+        final AtomicInteger signins = new AtomicInteger();
+        final AtomicInteger signouts = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for(int i=0;i<8;i++) {
+            final int thread = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                    for(int j=0;j<2000;j++) {
+                        String sessionId = thread + "-" + j;
+                        if(registry.connect("rob@example.com", sessionId)) {
+                            signins.incrementAndGet();
+                        }
+                        if(registry.disconnect(sessionId) != null) {
+                            signouts.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(signins.get(), signouts.get());
+        assertFalse(registry.isActive("rob@example.com"));
+        assertEquals(0, registry.getSessionCount());
+        assertEquals(0, registry.getActiveUserCount());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserSessionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+
+import sample.Application;
+import sample.websocket.PresenceRegistry;
+import sample.websocket.RedisBrokerRelay;
+
+/**
+ * Runs two nodes of the application in process, sharing the embedded Redis
+ * started by the first node, with the Redis broker relay enabled.
+ */
+public class RedisBrokerRelayTests {
+    static ConfigurableApplicationContext node1;
+
+    static ConfigurableApplicationContext node2;
+
+    @BeforeClass
+    public static void startNodes() throws IOException {
+        int redisPort = availablePort();
+        node1 = startNode("node1", redisPort, true);
+        node2 = startNode("node2", redisPort, false);
+    }
+
+    @AfterClass
+    public static void stopNodes() {
+        if(node2 != null) {
+            node2.close();
+        }
+        if(node1 != null) {
+            node1.close();
+        }
+    }
+
+    @Test
+    public void userMessageReachesUserOnOtherNode() throws Exception {
+        BlockingQueue<Message<?>> messages = connect(node2, "rob@example.com", "rob-session");
+
+        send(node1, "rob@example.com", "Hello Rob");
+
+        Message<?> message = messages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("Hello Rob", new String((byte[]) message.getPayload(), "UTF-8"));
+    }
+
+    @Test
+    public void userMessageToLocalUserIsNotPublished() throws Exception {
+        BlockingQueue<Message<?>> messages = connect(node1, "luke@example.com", "luke-session");
+        RedisBrokerRelay relay = node1.getBean(RedisBrokerRelay.class);
+        long published = relay.getPublished();
+
+        send(node1, "luke@example.com", "Hello Luke");
+
+        assertNotNull(messages.poll(5, TimeUnit.SECONDS));
+        assertEquals(published, relay.getPublished());
+    }
+
+    private static void send(ConfigurableApplicationContext node, String username, String text) {
+        node.getBean(SimpMessageSendingOperations.class).convertAndSendToUser(username, "/queue/messages", text);
+    }
+
+    /**
+     * Simulates a WebSocket session subscribed to "/user/queue/messages" and
+     * returns the messages that are sent to it.
+     */
+    private static BlockingQueue<Message<?>> connect(ConfigurableApplicationContext node, String username, final String sessionId) {
+        node.getBean(PresenceRegistry.class).connect(username, sessionId);
+        node.getBean(UserSessionRegistry.class).registerSessionId(username, sessionId);
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-" + sessionId);
+        subscribe.setDestination("/queue/messages-user" + sessionId);
+        node.getBean(SimpleBrokerMessageHandler.class).handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+
+        final BlockingQueue<Message<?>> messages = new LinkedBlockingQueue<Message<?>>();
+        node.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if(sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+                    messages.add(message);
+                }
+            }
+        });
+        return messages;
+    }
+
+    private static ConfigurableApplicationContext startNode(String name, int redisPort, boolean embeddedRedis) {
+        return new SpringApplicationBuilder(Application.class)
+            .properties("server.port=0",
+                    "spring.jmx.enabled=false",
+                    "sample.websocket.broker=redis",
+                    "sample.redis.port=" + redisPort,
+                    "sample.redis.embedded=" + embeddedRedis,
+                    "sample.datasource.name=" + name)
+            .run();
+    }
+
+    private static int availablePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.SerializationUtils;
+
+import sample.security.Role;
+import sample.security.RoleSet;
+import sample.security.UserPrincipal;
+
+public class RoleSetTests {
+
+    @Test
+    public void setsAreInterned() {
+        RoleSet user = RoleSet.of(Role.USER);
+
+        assertSame(user, RoleSet.copyOf(AuthorityUtils.createAuthorityList("ROLE_USER")));
+        assertSame(user, RoleSet.fromBits(user.getBits()));
+        assertSame(user, new UserPrincipal(1L, "rob@example.com", "Rob", null, Collections.singleton(Role.USER)).getAuthorities());
+        assertSame(user, SerializationUtils.deserialize(SerializationUtils.serialize(user)));
+    }
+
+    @Test
+    public void membershipIsBitwise() {
+        RoleSet user = RoleSet.of(Role.USER);
+        RoleSet none = RoleSet.of();
+
+        assertTrue(user.contains(Role.USER));
+        assertFalse(none.contains(Role.USER));
+        assertFalse(user.contains("ROLE_USER"));
+        assertTrue(user.containsAll(none));
+        assertFalse(none.containsAll(user));
+        assertEquals(Collections.singleton(Role.USER), user);
+        assertEquals(0, none.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void setsAreImmutable() {
+        RoleSet.of().add(Role.USER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAuthorityIsRejected() {
+        RoleSet.copyOf(AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
+    }
+}
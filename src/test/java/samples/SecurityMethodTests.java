@@ -15,16 +15,29 @@
  */
 package samples;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import sample.Application;
+import sample.data.Message;
 import sample.data.MessageRepository;
+import sample.security.MessagePermissionEvaluator;
 
 /**
  * @author Rob Winch
@@ -36,12 +49,50 @@ public class SecurityMethodTests {
     @Autowired
     MessageRepository repository;
 
+    @Autowired
+    MessagePermissionEvaluator permissionEvaluator;
+
     @Test
     @WithUserDetails("rob@example.com")
     public void findAllMessages() {
         repository.findAll();
     }
 
+    @Test
+    @WithUserDetails("rob@example.com")
+    public void findOneToCurrentUserOnlyFindsOwnMessages() {
+        assertNotNull(repository.findOneToCurrentUser(100L));
+        assertNull(repository.findOneToCurrentUser(110L));
+    }
+
+    @Test
+    @WithUserDetails("rob@example.com")
+    public void permittedMessageIdsOnlyIncludesOwnMessages() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        assertEquals(new HashSet<Long>(Arrays.asList(100L, 101L)),
+                permissionEvaluator.getPermittedMessageIds(authentication, Arrays.asList(100L, 101L, 110L, 999L), "read"));
+        assertTrue(permissionEvaluator.hasPermission(authentication, 100L, Message.class.getName(), "read"));
+        assertFalse(permissionEvaluator.hasPermission(authentication, 110L, Message.class.getName(), "read"));
+    }
+
+    @Test
+    @WithUserDetails("rob@example.com")
+    public void recipientPermissionsAreGranted() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        assertTrue(permissionEvaluator.hasPermission(authentication, 100L, Message.class.getName(), "delete"));
+        assertTrue(permissionEvaluator.hasPermission(authentication, 100L, Message.class.getName(), "archive"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @WithUserDetails("rob@example.com")
+    public void unknownPermissionIsRejected() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        permissionEvaluator.getPermittedMessageIds(authentication, Arrays.asList(100L), "write");
+    }
+
     @Test
     @WithMockUser(username="admin",roles="ADMIN")
     public void findAllMessagesAdmin() {
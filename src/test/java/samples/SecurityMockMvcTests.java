@@ -22,20 +22,43 @@ import static org.springframework.security.test.web.servlet.response.SecurityMoc
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
 import javax.servlet.Filter;
 
 import org.hamcrest.BaseMatcher;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.hamcrest.Description;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
 
 import sample.Application;
+import sample.data.InstantMessage;
 import sample.data.Message;
+import sample.data.MessageRepository;
+import sample.data.MessageSummary;
+import sample.data.User;
+import sample.security.Role;
+import sample.security.UserPrincipal;
 
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
@@ -44,6 +67,7 @@ import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultMatcher;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
 /**
@@ -61,6 +85,15 @@ public class SecurityMockMvcTests {
     @Autowired
     private Filter springSecurityFilterChain;
 
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private MockMvc mvc;
 
     @Before
@@ -83,11 +116,11 @@ public class SecurityMockMvcTests {
     public void inboxShowsOnlyRobsMessages() throws Exception {
         mvc
             .perform(get("/"))
-            .andExpect(model().attribute("messages", new BaseMatcher<List<Message>>() {
+            .andExpect(model().attribute("messages", new BaseMatcher<List<MessageSummary>>() {
                 @Override
                 public boolean matches(Object other) {
                     @SuppressWarnings("unchecked")
-                    List<Message> messages = (List<Message>) other;
+                    List<MessageSummary> messages = (List<MessageSummary>) other;
                     return messages.size() == 1 && messages.get(0).getId() == 100;
                 }
 
@@ -111,6 +144,20 @@ public class SecurityMockMvcTests {
             .andExpect(authenticated());
     }
 
+    @Test
+    public void loginStoresPrincipalWithoutCredentials() throws Exception {
+        MvcResult result = mvc
+            .perform(formLogin().user("rob@example.com"))
+            .andReturn();
+
+        SecurityContext securityContext = (SecurityContext) result.getRequest().getSession()
+                .getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        UserPrincipal principal = (UserPrincipal) securityContext.getAuthentication().getPrincipal();
+        assertEquals("rob@example.com", principal.getUsername());
+        assertNull(principal.getPassword());
+        assertTrue(principal.hasRole(Role.USER));
+    }
+
     @Test
     @WithCustomUser
     public void composeRequiresCsrf() throws Exception {
@@ -139,6 +186,14 @@ public class SecurityMockMvcTests {
             .andExpect(status().isForbidden());
     }
 
+    @Test
+    @WithCustomUser
+    public void robCannotAccessMissingMessage() throws Exception {
+        mvc
+            .perform(get("/999"))
+            .andExpect(status().isForbidden());
+    }
+
     @Test
     @WithCustomUser(id=1,email="luke@example.com")
     public void lukeCanAccessLukesMessage() throws Exception {
@@ -155,6 +210,195 @@ public class SecurityMockMvcTests {
             .andExpect(status().isOk());
     }
 
+    @Test
+    @Transactional
+    @WithCustomUser
+    public void bulkDeleteOnlyDeletesOwnMessages() throws Exception {
+        mvc
+            .perform(post("/bulk").param("delete", "").param("ids", "100", "101", "110").with(csrf()))
+            .andExpect(flash().attribute("deleted", 2));
+
+        assertFalse(messageRepository.exists(100L));
+        assertFalse(messageRepository.exists(101L));
+        assertTrue(messageRepository.exists(110L));
+    }
+
+    @Test
+    @Transactional
+    @WithCustomUser
+    public void bulkArchiveOnlyArchivesOwnMessages() throws Exception {
+        mvc
+            .perform(post("/bulk").param("archive", "").param("ids", "100", "110").with(csrf()))
+            .andExpect(flash().attribute("archived", 1));
+
+        assertTrue(entityManager.find(Message.class, 100L).isArchived());
+        assertFalse(entityManager.find(Message.class, 110L).isArchived());
+    }
+
+    @Test
+    @WithCustomUser
+    public void bulkDeleteRequiresCsrf() throws Exception {
+        mvc
+            .perform(post("/bulk").param("delete", "").param("ids", "100"))
+            .andExpect(invalidCsrf());
+    }
+
+    @Test
+    @Transactional
+    @WithCustomUser
+    public void imHistoryOnlyIncludesConversation() throws Exception {
+        saveIm("rob@example.com", "luke@example.com", "Hi Luke");
+        saveIm("luke@example.com", "rob@example.com", "Hi Rob");
+        saveIm("rob@example.com", "josh@example.com", "Hi Josh");
+
+        mvc
+            .perform(get("/im/history").param("with", "luke@example.com"))
+            .andExpect(content().string(containsString("Hi Luke")))
+            .andExpect(content().string(containsString("Hi Rob")))
+            .andExpect(content().string(not(containsString("Hi Josh"))));
+    }
+
+    @Test
+    @WithCustomUser
+    public void inboxIsSingleStatement() throws Exception {
+        Statistics statistics = statistics();
+
+        mvc
+            .perform(get("/"))
+            .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @WithCustomUser
+    public void viewMessageIsSingleStatement() throws Exception {
+        Statistics statistics = statistics();
+
+        mvc
+            .perform(get("/100"))
+            .andExpect(status().isOk());
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @WithCustomUser(id=1,email="luke@example.com")
+    public void olderThanOrdersEqualCreatedById() throws Exception {
+        Instant created = entityManager.find(Message.class, 112L).getCreated();
+
+        assertEquals(ids(111L), ids(messageRepository.findInboxToCurrentUserOlderThan(created, 112L, new PageRequest(0, 1))));
+        assertEquals(ids(111L, 110L), ids(messageRepository.findInboxToCurrentUserOlderThan(created, 112L, new PageRequest(0, 5))));
+        assertEquals(ids(), ids(messageRepository.findInboxToCurrentUserOlderThan(created, 110L, new PageRequest(0, 5))));
+    }
+
+    @Test
+    @WithCustomUser(id=1,email="luke@example.com")
+    public void newerThanOrdersEqualCreatedById() throws Exception {
+        Instant created = entityManager.find(Message.class, 110L).getCreated();
+
+        assertEquals(ids(111L), ids(messageRepository.findInboxToCurrentUserNewerThan(created, 110L, new PageRequest(0, 1))));
+        assertEquals(ids(111L, 112L), ids(messageRepository.findInboxToCurrentUserNewerThan(created, 110L, new PageRequest(0, 5))));
+        assertEquals(ids(), ids(messageRepository.findInboxToCurrentUserNewerThan(created, 112L, new PageRequest(0, 5))));
+    }
+
+    @Test
+    @Transactional
+    @WithCustomUser
+    public void inboxPagesAcrossEqualCreated() throws Exception {
+        Instant created = Instant.parse("2014-08-01T10:00:00Z");
+        for(int i=0;i<25;i++) {
+            saveMessage(created);
+        }
+
+        MvcResult first = mvc.perform(get("/")).andReturn();
+        List<MessageSummary> firstPage = inbox(first);
+        assertEquals(20, firstPage.size());
+        assertNull(first.getModelAndView().getModel().get("newer"));
+
+        MessageSummary last = firstPage.get(19);
+        MvcResult second = mvc
+            .perform(get("/").param("direction", "older").param("created", String.valueOf(last.getCreated().toEpochMilli())).param("id", String.valueOf(last.getId())))
+            .andReturn();
+        List<MessageSummary> secondPage = inbox(second);
+        assertEquals(8, secondPage.size());
+        assertTrue(last.getId() > secondPage.get(0).getId());
+        assertEquals(Long.valueOf(100L), secondPage.get(7).getId());
+        assertNull(second.getModelAndView().getModel().get("older"));
+
+        MessageSummary top = secondPage.get(0);
+        MvcResult back = mvc
+            .perform(get("/").param("direction", "newer").param("created", String.valueOf(top.getCreated().toEpochMilli())).param("id", String.valueOf(top.getId())))
+            .andReturn();
+        assertEquals(ids(firstPage), ids(inbox(back)));
+    }
+
+    @Test
+    @Transactional
+    @WithCustomUser
+    public void newerNearTopShowsFirstPage() throws Exception {
+        Instant created = Instant.parse("2014-08-01T10:00:00Z");
+        for(int i=0;i<25;i++) {
+            saveMessage(created);
+        }
+        List<MessageSummary> firstPage = inbox(mvc.perform(get("/")).andReturn());
+        MessageSummary third = firstPage.get(2);
+
+        MvcResult result = mvc
+            .perform(get("/").param("direction", "newer").param("created", String.valueOf(third.getCreated().toEpochMilli())).param("id", String.valueOf(third.getId())))
+            .andReturn();
+
+        assertEquals(ids(firstPage), ids(inbox(result)));
+        assertNull(result.getModelAndView().getModel().get("newer"));
+        assertEquals(firstPage.get(19).getId(), ((MessageSummary) result.getModelAndView().getModel().get("older")).getId());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<MessageSummary> inbox(MvcResult result) {
+        return (List<MessageSummary>) result.getModelAndView().getModel().get("messages");
+    }
+
+    private static List<Long> ids(Long... ids) {
+        List<Long> result = new ArrayList<Long>();
+        for(Long id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    private static List<Long> ids(List<MessageSummary> messages) {
+        List<Long> result = new ArrayList<Long>();
+        for(MessageSummary message : messages) {
+            result.add(message.getId());
+        }
+        return result;
+    }
+
+    private void saveMessage(Instant created) {
+        Message message = new Message();
+        message.setTo(entityManager.getReference(User.class, 0L));
+        message.setFrom(entityManager.getReference(User.class, 1L));
+        message.setSummary("Paged");
+        message.setText("This message is for Rob");
+        message.setCreated(created);
+        entityManager.persist(message);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        return statistics;
+    }
+
+    private void saveIm(String from, String to, String text) {
+        InstantMessage im = new InstantMessage();
+        im.setFrom(from);
+        im.setTo(to);
+        im.setMessage(text);
+        entityManager.persist(im);
+    }
+
     private static ResultMatcher loginPage() {
         return new ResultMatcher() {
             @Override
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import sample.data.User;
+import sample.data.UserRepository;
+import sample.security.Role;
+import sample.security.RoleSet;
+import sample.security.SecurityContextCodec;
+import sample.security.UserPrincipal;
+import sample.security.UserRepositoryUserDetailsService;
+import sample.session.SessionAttributeSerializer;
+
+public class SessionAttributeSerializerTests {
+    JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    SessionAttributeSerializer serializer;
+
+    SecurityContextImpl context;
+
+    @Before
+    public void setup() {
+        serializer = new SessionAttributeSerializer(true, new SecurityContextCodec());
+
+        User rob = new User();
+        rob.setId(0L);
+        rob.setEmail("rob@example.com");
+        rob.setFirstName("Rob");
+        rob.setLastName("Winch");
+        rob.setPassword("$2a$10$FBAKClV1zBIOOC9XMXf3AO8RoGXYVYsfvUdoLxGkd/BnXEn4tqT3u");
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByEmail(rob.getEmail())).thenReturn(rob);
+        UserDetails principal = new UserRepositoryUserDetailsService(userRepository).loadUserByUsername(rob.getEmail());
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        authentication.setDetails(new WebAuthenticationDetails(request));
+        context = new SecurityContextImpl();
+        context.setAuthentication(authentication);
+    }
+
+    @Test
+    public void securityContextIsSmallerThanJdkAndRoundTrips() {
+        byte[] compact = serializer.serialize(context);
+
+        assertTrue(compact.length + " >= " + jdk.serialize(context).length, compact.length < jdk.serialize(context).length);
+        SecurityContextImpl result = (SecurityContextImpl) serializer.deserialize(compact);
+        UserPrincipal principal = (UserPrincipal) result.getAuthentication().getPrincipal();
+        assertEquals(0L, principal.getId());
+        assertEquals("rob@example.com", principal.getUsername());
+        assertEquals("Rob", principal.getFirstName());
+        assertSame(RoleSet.of(Role.USER), principal.getAuthorities());
+        assertEquals(context.getAuthentication().getAuthorities(), result.getAuthentication().getAuthorities());
+        assertEquals(context.getAuthentication().getDetails(), result.getAuthentication().getDetails());
+        assertTrue(result.getAuthentication().isAuthenticated());
+    }
+
+    @Test
+    public void knownTypesRoundTrip() {
+        assertEquals("value", serializer.deserialize(serializer.serialize("value")));
+        assertEquals(1234567890123L, serializer.deserialize(serializer.serialize(1234567890123L)));
+        assertEquals(1800, serializer.deserialize(serializer.serialize(1800)));
+        assertEquals(Boolean.TRUE, serializer.deserialize(serializer.serialize(true)));
+        assertEquals(null, serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test
+    public void otherTypesFallBackToJdk() {
+        Date date = new Date();
+
+        assertEquals(date, serializer.deserialize(serializer.serialize(date)));
+    }
+
+    @Test
+    public void readsJdkSerializedValues() {
+        SessionAttributeSerializer jdkWriter = new SessionAttributeSerializer(false, new SecurityContextCodec());
+
+        assertEquals(1800, serializer.deserialize(jdk.serialize(1800)));
+        SecurityContextImpl result = (SecurityContextImpl) serializer.deserialize(jdkWriter.serialize(context));
+        assertEquals("rob@example.com", result.getAuthentication().getName());
+    }
+
+    @Test
+    public void unreadableJdkSecurityContextIsReplacedWithEmptyContext() {
+        byte[] stored = withRemovedPrincipalClass(jdk.serialize(contextWith(new LegacyPrincipal())));
+
+        SecurityContextImpl result = (SecurityContextImpl) serializer.deserialize(stored);
+
+        assertNull(result.getAuthentication());
+    }
+
+    @Test
+    public void unreadableCompactSecurityContextIsReplacedWithEmptyContext() {
+        byte[] stored = withRemovedPrincipalClass(serializer.serialize(contextWith(new LegacyPrincipal())));
+
+        SecurityContextImpl result = (SecurityContextImpl) serializer.deserialize(stored);
+
+        assertNull(result.getAuthentication());
+    }
+
+    @Test(expected = SerializationException.class)
+    public void unreadableValueWithoutCodecFails() {
+        serializer.deserialize(withRemovedPrincipalClass(jdk.serialize(new LegacyPrincipal())));
+    }
+
+    private static SecurityContextImpl contextWith(Object principal) {
+        SecurityContextImpl context = new SecurityContextImpl();
+        context.setAuthentication(new TestingAuthenticationToken(principal, null, "ROLE_USER"));
+        return context;
+    }
+
+    /**
+     * Renames {@link LegacyPrincipal} in the serialized form to a class that
+     * does not exist, as if it had been removed since the value was written.
+     */
+    private static byte[] withRemovedPrincipalClass(byte[] bytes) {
+        byte[] from = LegacyPrincipal.class.getName().getBytes();
+        byte[] to = LegacyPrincipal.class.getName().replace("LegacyPrincipal", "RemovedPrincipl").getBytes();
+        for(int i = 0; i <= bytes.length - from.length; i++) {
+            boolean matches = true;
+            for(int j = 0; j < from.length && matches; j++) {
+                matches = bytes[i + j] == from[j];
+            }
+            if(matches) {
+                System.arraycopy(to, 0, bytes, i, to.length);
+            }
+        }
+        return bytes;
+    }
+
+    static class LegacyPrincipal implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package samples;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.session.ExpiringSession;
+import org.springframework.session.MapSession;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import sample.session.BatchingSessionRepository;
+import sample.session.SessionTouchCoalescer;
+
+public class SessionTouchCoalescerTests {
+    SessionRepository<Session> sessionRepository;
+
+    ExpiringSession session;
+
+    SessionTouchCoalescer coalescer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        session = new MapSession();
+        sessionRepository = mock(SessionRepository.class);
+        when(sessionRepository.getSession(session.getId())).thenReturn(session);
+        coalescer = new SessionTouchCoalescer(sessionRepository, 0.1);
+    }
+
+    @Test
+    public void inboundMessagesWithinWindowWriteOnce() {
+        for(int i=0;i<1000;i++) {
+            coalescer.touch(session.getId());
+        }
+
+        verify(sessionRepository, times(1)).getSession(session.getId());
+        verify(sessionRepository, times(1)).save(session);
+        assertEquals(1, coalescer.getTouchesWritten());
+        assertEquals(999, coalescer.getTouchesSkipped());
+    }
+
+    @Test
+    public void flushDoesNotWriteBeforeWindowElapses() {
+        coalescer.touch(session.getId());
+        coalescer.touch(session.getId());
+
+        coalescer.flush();
+
+        verify(sessionRepository, times(1)).save(any(Session.class));
+    }
+
+    @Test
+    public void missingSessionIsForgotten() {
+        coalescer.touch("missing");
+        coalescer.touch("missing");
+
+        verify(sessionRepository, never()).save(any(Session.class));
+        assertEquals(0, coalescer.getTrackedSessions());
+    }
+
+    @Test
+    public void failingSessionDoesNotStopFlush() throws Exception {
+        ExpiringSession failing = new MapSession();
+        failing.setMaxInactiveIntervalInSeconds(1);
+        session.setMaxInactiveIntervalInSeconds(1);
+        when(sessionRepository.getSession(failing.getId()))
+            .thenReturn(failing)
+            .thenThrow(new IllegalStateException("Cannot deserialize"));
+        touchTwice(session, failing);
+        Thread.sleep(150);
+
+        coalescer.flush();
+
+        verify(sessionRepository, times(2)).save(session);
+        assertEquals(3, coalescer.getTouchesWritten());
+        assertEquals(1, coalescer.getTouchesFailed());
+        assertEquals(2, coalescer.getTrackedSessions());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void flushSavesPendingTouchesTogether() throws Exception {
+        BatchingSessionRepository<Session> batchingRepository = mock(BatchingSessionRepository.class);
+        ExpiringSession other = new MapSession();
+        other.setMaxInactiveIntervalInSeconds(1);
+        session.setMaxInactiveIntervalInSeconds(1);
+        when(batchingRepository.getSession(session.getId())).thenReturn(session);
+        when(batchingRepository.getSession(other.getId())).thenReturn(other);
+        coalescer = new SessionTouchCoalescer(batchingRepository, 0.1);
+        touchTwice(session, other);
+        Thread.sleep(150);
+
+        coalescer.flush();
+
+        verify(batchingRepository, times(2)).save(any(Session.class));
+        verify(batchingRepository).saveAll(anyCollectionOf(Session.class));
+        assertEquals(4, coalescer.getTouchesWritten());
+    }
+
+    private void touchTwice(Session... sessions) {
+        for(Session session : sessions) {
+            coalescer.touch(session.getId());
+            coalescer.touch(session.getId());
+        }
+    }
+}
@@ -15,27 +15,26 @@
  */
 package samples;
 
+import java.util.Collections;
+
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.test.context.support.WithSecurityContextFactory;
 
-import sample.data.User;
+import sample.security.Role;
+import sample.security.UserPrincipal;
 
 public class WithCustomUserSecurityContextFactory implements WithSecurityContextFactory<WithCustomUser> {
 
     public SecurityContext createSecurityContext(WithCustomUser customUser) {
         SecurityContext context = SecurityContextHolder.createEmptyContext();
 
-        User principal = new User();
-        principal.setEmail(customUser.email());
-        principal.setFirstName(customUser.firstName());
-        principal.setLastName(customUser.lastName());
-        principal.setId(customUser.id());
+        UserPrincipal principal = new UserPrincipal(customUser.id(), customUser.email(), customUser.firstName(),
+                null, Collections.singleton(Role.USER));
         Authentication auth =
-            new UsernamePasswordAuthenticationToken(principal, "password", AuthorityUtils.createAuthorityList("ROLE_USER"));
+            new UsernamePasswordAuthenticationToken(principal, "password", principal.getAuthorities());
         context.setAuthentication(auth);
         return context;
     }